@@ -0,0 +1,54 @@
+package searchengine.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import searchengine.utils.LemmaFinder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//лемматизация страниц: подсчёт частот для индекса, список лемм запроса
+//и полный разбор с позициями слов. Кэш словоформ прогревается на разминке,
+//поэтому измеряется установившийся режим краулера
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LemmaFinderBenchmark {
+    //каталог с текстами страниц (document.body().text()), пусто - синтетический корпус
+    @Param({""})
+    public String pagesDir;
+
+    private LemmaFinder lemmaFinder;
+    private List<String> pages;
+
+    @Setup
+    public void setUp() throws IOException {
+        lemmaFinder = new LemmaFinder(new SimpleMeterRegistry());
+        pages = SyntheticCorpus.load(pagesDir, 200, 2000);
+    }
+
+    @Benchmark
+    public void getLemmasAndFrequency(Blackhole blackhole) {
+        for (String page : pages) {
+            blackhole.consume(lemmaFinder.getLemmasAndFrequency(page));
+        }
+    }
+
+    @Benchmark
+    public void getLemmas(Blackhole blackhole) {
+        for (String page : pages) {
+            blackhole.consume(lemmaFinder.getLemmas(page));
+        }
+    }
+
+    @Benchmark
+    public void analyze(Blackhole blackhole) {
+        for (String page : pages) {
+            blackhole.consume(lemmaFinder.analyze("", page));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package searchengine.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+//тексты страниц для бенчмарков: либо файлы из каталога (сохранённые тексты
+//реальных страниц), либо сгенерированная смесь русских и английских слов
+//с распределением частот, близким к закону Ципфа
+public final class SyntheticCorpus {
+    private static final String[] RUSSIAN_WORDS = {
+            "новости", "город", "который", "время", "работа", "человек", "система", "поиск", "страница",
+            "сайт", "компания", "проект", "россия", "москва", "года", "также", "после", "может", "будет",
+            "программа", "обучение", "курсы", "музей", "выставка", "библиотека", "концерт", "собор",
+            "телефон", "смартфон", "экран", "доставка", "магазин", "цена", "купить", "заказ", "видео",
+            "фильм", "научный", "институт", "физика", "исследование", "лаборатория", "статья", "журнал",
+            "ещё", "ёлка", "Москвы", "Новости", "РАБОТЫ", "людей", "городов", "поисковый", "страницы"
+    };
+    private static final String[] ENGLISH_WORDS = {
+            "the", "search", "engine", "page", "index", "news", "people", "time", "year", "work",
+            "system", "project", "company", "program", "course", "museum", "phone", "price", "order",
+            "video", "film", "science", "research", "article", "journal", "running", "indexed", "pages",
+            "Search", "ENGINE", "and", "with", "from", "about"
+    };
+    private static final String[] SEPARATORS = {" ", " ", " ", ", ", ". ", " - ", " (", ") ", ": ", " 2023 ", "\n"};
+
+    private SyntheticCorpus() {
+    }
+
+    //pagesDir - каталог с текстовыми файлами; если пуст, тексты генерируются
+    public static List<String> load(String pagesDir, int pages, int wordsPerPage) {
+        if (pagesDir != null && !pagesDir.isBlank()) {
+            return readPages(Path.of(pagesDir));
+        }
+        return generate(pages, wordsPerPage, 42);
+    }
+
+    public static List<String> generate(int pages, int wordsPerPage, long seed) {
+        Random random = new Random(seed);
+        List<String> result = new ArrayList<>(pages);
+        for (int i = 0; i < pages; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < wordsPerPage; j++) {
+                String[] words = random.nextInt(4) == 0 ? ENGLISH_WORDS : RUSSIAN_WORDS;
+                text.append(words[zipf(random, words.length)])
+                        .append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+            }
+            result.add(text.toString());
+        }
+        return result;
+    }
+
+    //первые слова словаря встречаются заметно чаще последних
+    private static int zipf(Random random, int size) {
+        double value = Math.pow(size + 1, random.nextDouble()) - 1;
+        return Math.min(size - 1, (int) value);
+    }
+
+    private static List<String> readPages(Path dir) {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<String> result = new ArrayList<>();
+            for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                result.add(Files.readString(file, StandardCharsets.UTF_8));
+            }
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
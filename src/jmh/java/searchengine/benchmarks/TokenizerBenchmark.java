@@ -0,0 +1,59 @@
+package searchengine.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import searchengine.utils.WordTokenizer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//сравнение прежнего разбиения на слова (toLowerCase + replaceAll + split +
+//String.matches на каждое слово) с однопроходным WordTokenizer
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TokenizerBenchmark {
+    //каталог с текстами страниц (document.body().text()), пусто - синтетический корпус
+    @Param({""})
+    public String pagesDir;
+
+    private List<String> pages;
+
+    @Setup
+    public void setUp() {
+        pages = SyntheticCorpus.load(pagesDir, 200, 2000);
+    }
+
+    @Benchmark
+    public void regexSplit(Blackhole blackhole) {
+        for (String page : pages) {
+            String[] words = page.toLowerCase()
+                    .replaceAll("<[^>]*>", " ")
+                    .replaceAll("[^а-яa-z]+", " ")
+                    .trim()
+                    .split("\\s");
+            for (String word : words) {
+                if (word.isBlank() || word.length() < 3) {
+                    continue;
+                }
+                blackhole.consume(word.matches("[ёа-яЁА-Я]+"));
+                blackhole.consume(word.matches("[a-zA-Z]+"));
+            }
+        }
+    }
+
+    @Benchmark
+    public void singlePass(Blackhole blackhole) {
+        for (String page : pages) {
+            WordTokenizer.tokenize(page, (buffer, length, start, russian) -> {
+                //LemmaFinder создаёт строку для поиска в кэше словоформ - учитываем и её
+                if (length >= 3) {
+                    blackhole.consume(new String(buffer, 0, length));
+                    blackhole.consume(russian);
+                }
+            });
+        }
+    }
+}
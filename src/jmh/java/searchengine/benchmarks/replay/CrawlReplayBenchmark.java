@@ -0,0 +1,128 @@
+package searchengine.benchmarks.replay;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import searchengine.Application;
+import searchengine.model.Site;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.IndexingService;
+import searchengine.utils.WebCrawler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+//полный обход локального ReplaySite приложением с H2 в режиме PostgreSQL вместо
+//PostgreSQL: без сети и внешней базы, результат воспроизводим. Аргументы - пары name=value:
+//  pages, links, words - размер сгенерированного сайта; dir - каталог с сохранёнными страницами;
+//  runs - число обходов подряд; incremental=true - обходы после первого инкрементальные;
+//  остальные пары (с точкой в имени) - настройки Spring, например crawler-settings.fetch-threads=64
+public class CrawlReplayBenchmark {
+    private static final Set<String> OPTIONS = Set.of("pages", "links", "words", "dir", "runs", "incremental");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        Map<String, String> overrides = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            //аргументы без "=" (например -f 1 из jmh.args по умолчанию) пропускаются
+            if (separator <= 0) {
+                continue;
+            }
+            String name = arg.substring(0, separator);
+            (OPTIONS.contains(name) ? options : overrides).put(name, arg.substring(separator + 1));
+        }
+        int pages = Integer.parseInt(options.getOrDefault("pages", "2000"));
+        int links = Integer.parseInt(options.getOrDefault("links", "8"));
+        int words = Integer.parseInt(options.getOrDefault("words", "400"));
+        int runs = Integer.parseInt(options.getOrDefault("runs", "1"));
+        boolean incremental = Boolean.parseBoolean(options.getOrDefault("incremental", "false"));
+
+        try (ReplaySite replaySite = ReplaySite.start(options.get("dir"), pages, links, words);
+             ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                     .run(toCommandLine(getProperties(replaySite.getUrl()), overrides))) {
+            IndexingService indexingService = context.getBean(IndexingService.class);
+            SiteRepository siteRepository = context.getBean(SiteRepository.class);
+            MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+            for (int run = 1; run <= runs; run++) {
+                boolean incrementalRun = incremental && run > 1;
+                long fetchesBefore = getFetches(meterRegistry);
+                double rowsBefore = getWrittenRows(meterRegistry);
+                System.gc();
+                long peakHeap = memory.getHeapMemoryUsage().getUsed();
+                long start = System.nanoTime();
+
+                indexingService.startIndexing(incrementalRun);
+                //пик кучи по выборкам раз в 100 мс - кратковременные всплески между ними не видны
+                while (WebCrawler.isIndexing()) {
+                    peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+                    Thread.sleep(100);
+                }
+
+                double seconds = (System.nanoTime() - start) / 1e9;
+                long fetches = getFetches(meterRegistry) - fetchesBefore;
+                double rows = getWrittenRows(meterRegistry) - rowsBefore;
+                Site site = siteRepository.findByUrl(replaySite.getUrl());
+                System.out.printf(Locale.ROOT,
+                        "run %d (%s): %s, %d pages stored, %d fetched in %.1f s: %.0f pages/s, %.0f db rows/s, peak heap %d MB%n",
+                        run, incrementalRun ? "incremental" : "full", site.getStatus(), site.getPageCount(), fetches,
+                        seconds, fetches / seconds, rows / seconds, peakHeap / (1024 * 1024));
+            }
+        }
+    }
+
+    private static Map<String, String> getProperties(String siteUrl) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("spring.datasource.url", "jdbc:h2:mem:replay;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+                + "DEFAULT_NULL_ORDERING=HIGH;IGNORE_UNKNOWN_SETTINGS=TRUE;DB_CLOSE_DELAY=-1");
+        properties.put("spring.datasource.driver-class-name", "org.h2.Driver");
+        properties.put("spring.datasource.username", "sa");
+        properties.put("spring.datasource.password", "");
+        properties.put("spring.jpa.properties.hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        //таблицы создаёт replay-schema.sql, см. комментарий в нём
+        properties.put("spring.jpa.hibernate.ddl-auto", "none");
+        properties.put("spring.sql.init.mode", "always");
+        properties.put("spring.sql.init.schema-locations", "classpath:replay-schema.sql");
+        properties.put("server.port", "0");
+        properties.put("indexing-settings.sites[0].url", siteUrl);
+        properties.put("indexing-settings.sites[0].name", "Replay");
+        //локальный сервер не нужно беречь: ограничение скорости не должно быть узким местом
+        properties.put("crawler-settings.requests-per-second", "1000");
+        properties.put("crawler-settings.max-requests-per-second", "1000");
+        properties.put("crawler-settings.burst", "50");
+        properties.put("crawler-settings.max-connections-per-host", "16");
+        return properties;
+    }
+
+    //аргументы командной строки перекрывают application.yaml, в отличие от свойств SpringApplicationBuilder
+    private static String[] toCommandLine(Map<String, String> properties, Map<String, String> overrides) {
+        Map<String, String> merged = new LinkedHashMap<>(properties);
+        merged.putAll(overrides);
+        List<String> result = new ArrayList<>();
+        merged.forEach((name, value) -> result.add("--" + name + "=" + value));
+        return result.toArray(String[]::new);
+    }
+
+    //ответы сайта, включая 304 и ошибки
+    private static long getFetches(MeterRegistry meterRegistry) {
+        return meterRegistry.find("crawler.fetch").timers().stream().mapToLong(Timer::count).sum();
+    }
+
+    //строки, записанные пакетными операциями BulkIndexRepository
+    private static double getWrittenRows(MeterRegistry meterRegistry) {
+        return meterRegistry.find("db.batch.rows").counters().stream()
+                .filter(counter -> !"findPageLemmas".equals(counter.getId().getTag("operation")))
+                .mapToDouble(Counter::count)
+                .sum();
+    }
+}
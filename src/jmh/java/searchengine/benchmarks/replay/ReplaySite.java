@@ -0,0 +1,156 @@
+package searchengine.benchmarks.replay;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import searchengine.benchmarks.SyntheticCorpus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//локальный сайт для CrawlReplayBenchmark. Отдаёт либо сохранённые страницы из каталога
+//(путь файла относительно каталога - путь страницы, index.html - страница каталога),
+//либо сгенерированные страницы /page/N/ со ссылками на links других страниц.
+//У страниц постоянный ETag: при повторном обходе с If-None-Match ответ - 304
+public class ReplaySite implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Path dir;
+    private final int pages;
+    private final int links;
+    private final int wordsPerPage;
+
+    private ReplaySite(String dir, int pages, int links, int wordsPerPage) throws IOException {
+        this.dir = dir == null || dir.isBlank() ? null : Path.of(dir).toAbsolutePath().normalize();
+        this.pages = pages;
+        this.links = links;
+        this.wordsPerPage = wordsPerPage;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public static ReplaySite start(String dir, int pages, int links, int wordsPerPage) throws IOException {
+        ReplaySite site = new ReplaySite(dir, pages, links, wordsPerPage);
+        site.server.start();
+        return site;
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            byte[] body;
+            String etag;
+            String contentType = "text/html; charset=utf-8";
+            if (dir == null) {
+                int page = getPageNumber(path);
+                if (page < 0) {
+                    send(exchange, 404, null, null, new byte[0]);
+                    return;
+                }
+                etag = "\"" + page + "\"";
+                body = etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match")) ? null : generatePage(page);
+            } else {
+                Path file = resolve(path);
+                if (file == null) {
+                    send(exchange, 404, null, null, new byte[0]);
+                    return;
+                }
+                etag = "\"" + Files.size(file) + "-" + Files.getLastModifiedTime(file).toMillis() + "\"";
+                body = etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match")) ? null : Files.readAllBytes(file);
+                String name = file.getFileName().toString();
+                if (!name.endsWith(".html") && !name.endsWith(".htm")) {
+                    contentType = "application/octet-stream";
+                }
+            }
+            if (body == null) {
+                send(exchange, 304, etag, null, null);
+            } else {
+                send(exchange, 200, etag, contentType, body);
+            }
+        }
+    }
+
+    private void send(HttpExchange exchange, int code, String etag, String contentType, byte[] body) throws IOException {
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+        }
+        if (contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+        }
+        if (body == null) {
+            exchange.sendResponseHeaders(code, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    //"/" - страница 0, "/page/N/" - страница N
+    private int getPageNumber(String path) {
+        if (path.equals("/")) {
+            return 0;
+        }
+        if (!path.startsWith("/page/") || !path.endsWith("/")) {
+            return -1;
+        }
+        try {
+            int page = Integer.parseInt(path.substring("/page/".length(), path.length() - 1));
+            return page > 0 && page < pages ? page : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    //текст и ссылки зависят только от номера страницы, поэтому сайт одинаков при каждом запуске
+    private byte[] generatePage(int page) {
+        String text = SyntheticCorpus.generate(1, wordsPerPage, page).get(0);
+        Random random = new Random(page);
+        StringBuilder html = new StringBuilder(text.length() * 2 + links * 40);
+        html.append("<html><head><title>")
+                .append(text, 0, Math.min(60, text.length()))
+                .append("</title></head><body><nav>");
+        //ссылка на следующую страницу гарантирует, что из корня достижим весь сайт
+        appendLink(html, (page + 1) % pages);
+        for (int i = 1; i < links; i++) {
+            appendLink(html, random.nextInt(pages));
+        }
+        html.append("</nav><p>").append(text).append("</p></body></html>");
+        return html.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void appendLink(StringBuilder html, int page) {
+        html.append("<a href=\"").append(page == 0 ? "/" : "/page/" + page + "/").append("\">")
+                .append(page).append("</a> ");
+    }
+
+    private Path resolve(String path) {
+        Path file = dir.resolve(path.substring(1)).normalize();
+        if (!file.startsWith(dir)) {
+            return null;
+        }
+        if (Files.isDirectory(file)) {
+            file = file.resolve("index.html");
+        }
+        return Files.isRegularFile(file) ? file : null;
+    }
+}
@@ -0,0 +1,149 @@
+package searchengine.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import searchengine.benchmarks.SyntheticCorpus;
+import searchengine.index.*;
+import searchengine.model.Lemma;
+import searchengine.model.Site;
+import searchengine.utils.LemmaFinder;
+import searchengine.utils.PageText;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+//сниппеты, заголовки и ранжирование SearchingServiceImpl над индексом в памяти,
+//построенным из синтетического корпуса. Бенчмарк лежит в пакете services,
+//чтобы вызывать методы сервиса без базы: репозитории не нужны
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SearchingBenchmark {
+    private static final String[] QUERIES = {
+            "поиск страницы", "новости города москвы", "музей выставка собор", "search engine", "научный институт физика"
+    };
+    private static final int SITES = 4;
+    private static final int TOP_K = 100;
+
+    @Param({"2000"})
+    public int pages;
+
+    @Param({"500"})
+    public int wordsPerPage;
+
+    @Param({"bm25", "rank-sum"})
+    public String scorer;
+
+    private SearchingServiceImpl searchingService;
+    private List<PageText> pageTexts;
+    private List<String> htmlPages;
+    private List<Set<String>> queryLemmas;
+    //для каждого запроса: различные леммы от редких к частым и строки lemma всех сайтов
+    private List<List<String>> queryLemmaOrder;
+    private List<List<Lemma>> queryLemmaRows;
+
+    @Setup
+    public void setUp() throws IOException {
+        LemmaFinder lemmaFinder = new LemmaFinder(new SimpleMeterRegistry());
+        InvertedIndex invertedIndex = new InvertedIndex(null);
+        RelevanceScorer relevanceScorer = scorer.equals("bm25") ? new Bm25Scorer() : new RankSumScorer();
+        searchingService = new SearchingServiceImpl(lemmaFinder, null, null, null, null, invertedIndex,
+                new SearchResultCache(invertedIndex, new SimpleMeterRegistry()), relevanceScorer, new SimpleMeterRegistry());
+
+        List<String> texts = SyntheticCorpus.generate(pages, wordsPerPage, 42);
+        pageTexts = new ArrayList<>(texts.size());
+        htmlPages = new ArrayList<>(texts.size());
+        //site -> lemma -> строка таблицы lemma
+        List<Map<String, Lemma>> lemmaRows = new ArrayList<>();
+        for (int siteId = 1; siteId <= SITES; siteId++) {
+            lemmaRows.add(new HashMap<>());
+        }
+        for (int pageId = 1; pageId <= texts.size(); pageId++) {
+            String text = texts.get(pageId - 1);
+            String title = text.substring(0, Math.min(60, text.length()));
+            PageText pageText = lemmaFinder.analyze(title, text);
+            pageTexts.add(pageText);
+            htmlPages.add("<html><head><title>" + title + "</title></head><body><p>" + text + "</p></body></html>");
+
+            int siteId = pageId % SITES + 1;
+            Map<String, Lemma> siteLemmas = lemmaRows.get(siteId - 1);
+            for (Map.Entry<String, Integer> entry : pageText.getLemmaFrequencies().entrySet()) {
+                Lemma lemma = siteLemmas.computeIfAbsent(entry.getKey(), key -> newLemma(siteId, key, siteLemmas.size() + 1));
+                lemma.setFrequency(lemma.getFrequency() + 1);
+                invertedIndex.add(siteId, lemma.getId(), pageId, entry.getValue());
+            }
+            invertedIndex.setPageLength(siteId, pageId, pageText.getTokenCount());
+        }
+
+        queryLemmas = new ArrayList<>();
+        queryLemmaOrder = new ArrayList<>();
+        queryLemmaRows = new ArrayList<>();
+        for (String query : QUERIES) {
+            List<String> lemmas = lemmaFinder.getLemmas(query);
+            Map<String, Long> totalFrequencies = new HashMap<>();
+            List<Lemma> rows = new ArrayList<>();
+            for (Map<String, Lemma> siteLemmas : lemmaRows) {
+                for (String lemma : new HashSet<>(lemmas)) {
+                    Lemma row = siteLemmas.get(lemma);
+                    if (row != null) {
+                        rows.add(row);
+                        totalFrequencies.merge(lemma, (long) row.getFrequency(), Long::sum);
+                    }
+                }
+            }
+            //тот же порядок, что строит planQuery
+            rows.sort(Comparator.comparingLong((Lemma lemma) -> totalFrequencies.get(lemma.getLemma()))
+                    .thenComparing(Lemma::getLemma));
+            List<String> order = new ArrayList<>();
+            for (Lemma row : rows) {
+                if (!order.contains(row.getLemma())) {
+                    order.add(row.getLemma());
+                }
+            }
+            queryLemmas.add(new HashSet<>(lemmas));
+            queryLemmaOrder.add(order);
+            queryLemmaRows.add(rows);
+        }
+    }
+
+    @Benchmark
+    public void rank(Blackhole blackhole) {
+        for (int i = 0; i < QUERIES.length; i++) {
+            TopKCollector collector = new TopKCollector(TOP_K);
+            searchingService.findPagesWithAllLemmas(queryLemmaOrder.get(i), queryLemmaRows.get(i), collector);
+            blackhole.consume(collector.getTop());
+        }
+    }
+
+    //сниппеты первых 20 страниц выдачи на каждый запрос
+    @Benchmark
+    public void getSnippet(Blackhole blackhole) {
+        for (int i = 0; i < QUERIES.length; i++) {
+            Set<String> lemmas = queryLemmas.get(i);
+            for (int page = i; page < pageTexts.size(); page += Math.max(1, pageTexts.size() / 20)) {
+                blackhole.consume(searchingService.getSnippet(pageTexts.get(page), lemmas));
+            }
+        }
+    }
+
+    @Benchmark
+    public void getTitle(Blackhole blackhole) {
+        for (String html : htmlPages) {
+            blackhole.consume(searchingService.getTitle(html));
+        }
+    }
+
+    private static Lemma newLemma(int siteId, String word, int id) {
+        Site site = new Site();
+        site.setId(siteId);
+        Lemma lemma = new Lemma();
+        lemma.setId(siteId * 1_000_000 + id);
+        lemma.setSite(site);
+        lemma.setLemma(word);
+        return lemma;
+    }
+}
@@ -0,0 +1,51 @@
+-- схема для CrawlReplayBenchmark (H2 в режиме PostgreSQL). Повторяет таблицы,
+-- которые Hibernate создаёт в PostgreSQL по сущностям из searchengine.model,
+-- но без TEXT: в H2 это CLOB, а по CLOB нельзя построить уникальный индекс
+CREATE TABLE site (
+    id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    status VARCHAR(255) NOT NULL,
+    status_time TIMESTAMP NOT NULL,
+    last_error VARCHAR,
+    url VARCHAR(255) NOT NULL,
+    name VARCHAR(255) NOT NULL,
+    page_count INT NOT NULL DEFAULT 0,
+    lemma_count INT NOT NULL DEFAULT 0,
+    index_count INT NOT NULL DEFAULT 0
+);
+
+CREATE TABLE page (
+    id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    site_id INT NOT NULL REFERENCES site (id),
+    path VARCHAR NOT NULL,
+    code INT NOT NULL,
+    title VARCHAR,
+    text VARCHAR,
+    tokens VARBINARY,
+    content_hash VARCHAR(64),
+    etag VARCHAR(255),
+    last_modified VARCHAR(64)
+);
+
+CREATE UNIQUE INDEX path_index ON page (path, site_id);
+
+CREATE TABLE page_content (
+    page_id INT PRIMARY KEY REFERENCES page (id) ON DELETE CASCADE,
+    content VARBINARY
+);
+
+CREATE TABLE lemma (
+    id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    site_id INT NOT NULL REFERENCES site (id),
+    lemma VARCHAR(255) NOT NULL,
+    frequency INT NOT NULL,
+    UNIQUE (site_id, lemma)
+);
+
+CREATE TABLE "Index" (
+    id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    page_id INT NOT NULL REFERENCES page (id),
+    lemma_id INT NOT NULL REFERENCES lemma (id),
+    "rank" INT NOT NULL
+);
+
+CREATE UNIQUE INDEX page_lemma_index ON "Index" (page_id, lemma_id);
@@ -12,4 +12,16 @@ import org.springframework.stereotype.Component;
 public class CrawlerConfig {
     private String userAgent;
     private String referrer;
+    private int fetchThreads = 32;
+    private int maxConnectionsPerHost = 4;
+    private double requestsPerSecond = 5;
+    private double minRequestsPerSecond = 0.5;
+    private double maxRequestsPerSecond = 20;
+    private int burst = 1;
+    private long slowResponseMillis = 2000;
+    //повторная индексация без удаления сайта: обходятся только изменившиеся страницы
+    private boolean incremental = false;
+    //потоки и размер очереди для /api/indexPage и /api/indexPages
+    private int pageIndexThreads = 4;
+    private int pageIndexQueueCapacity = 10000;
 }
@@ -1,25 +1,32 @@
 package searchengine.controllers;
 
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import searchengine.dto.indexing.IndexingResponse;
 import searchengine.dto.searching.SearchResponse;
 import searchengine.dto.statistics.StatisticsResponse;
+import searchengine.services.IndexingProgressService;
 import searchengine.services.IndexingService;
 import searchengine.services.SearchingService;
 import searchengine.services.StatisticsService;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/api")
 public class ApiController {
     private final StatisticsService statisticsService;
     private final IndexingService indexingService;
     private final SearchingService searchingService;
+    private final IndexingProgressService indexingProgressService;
 
-    public ApiController(StatisticsService statisticsService, IndexingService indexingService, SearchingService searchingService) {
+    public ApiController(StatisticsService statisticsService, IndexingService indexingService, SearchingService searchingService, IndexingProgressService indexingProgressService) {
         this.statisticsService = statisticsService;
         this.indexingService = indexingService;
         this.searchingService = searchingService;
+        this.indexingProgressService = indexingProgressService;
     }
 
     @GetMapping("/statistics")
@@ -27,14 +34,23 @@ public class ApiController {
         return ResponseEntity.ok(statisticsService.getStatistics());
     }
 
+    //поток событий progress с состоянием обхода раз в секунду
+    @GetMapping(value = "/indexingProgress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter indexingProgress() {
+        return indexingProgressService.subscribe();
+    }
+
     @GetMapping("/startIndexing")
-    public ResponseEntity<IndexingResponse> startIndexing(){
-        return indexingService.startIndexing();
+    public ResponseEntity<IndexingResponse> startIndexing(@RequestParam(value = "incremental", required = false) Boolean incremental){
+        return indexingService.startIndexing(incremental);
     }
 
     @GetMapping("/stopIndexing")
-    public ResponseEntity<IndexingResponse> stopIndexing(){
-        return indexingService.stopIndexing();
+    public ResponseEntity<IndexingResponse> stopIndexing(@RequestParam(value = "site", required = false) String site){
+        if(site == null || site.isBlank()){
+            return indexingService.stopIndexing();
+        }
+        return indexingService.stopIndexing(site);
     }
 
     @PostMapping("/indexPage")
@@ -42,6 +58,11 @@ public class ApiController {
         return indexingService.indexPage(url);
     }
 
+    @PostMapping("/indexPages")
+    public ResponseEntity<IndexingResponse> indexPages(@RequestBody List<String> urls){
+        return indexingService.indexPages(urls);
+    }
+
     @GetMapping("/search")
     public ResponseEntity<SearchResponse> search(@RequestParam(value = "query") String query,
                                                  @RequestParam(value = "site", required = false) String site,
@@ -0,0 +1,23 @@
+package searchengine.dto.indexing;
+
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+public class IndexPagesResponse implements IndexingResponse{
+    private boolean result;
+    //поставлено в очередь, включая ссылки, которые уже ждали в ней
+    private int accepted;
+    //ссылки вне сайтов из конфигурации
+    private List<String> invalid;
+    //не поместились в очередь - их нужно отправить повторно
+    private List<String> rejected;
+
+    public IndexPagesResponse(boolean result, int accepted, List<String> invalid, List<String> rejected) {
+        this.result = result;
+        this.accepted = accepted;
+        this.invalid = invalid;
+        this.rejected = rejected;
+    }
+}
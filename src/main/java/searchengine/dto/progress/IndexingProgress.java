@@ -0,0 +1,11 @@
+package searchengine.dto.progress;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class IndexingProgress {
+    private boolean indexing;
+    private List<SiteProgress> sites;
+}
@@ -0,0 +1,17 @@
+package searchengine.dto.progress;
+
+import lombok.Data;
+
+@Data
+public class SiteProgress {
+    private String url;
+    private String name;
+    private int crawledPages;
+    //при инкрементальном обходе: страницы, ответившие 304 или с тем же хэшем содержимого
+    private int unchangedPages;
+    private double pagesPerSecond;
+    private int queuedPages;
+    private int errors;
+    private int pages;
+    private int lemmas;
+}
@@ -11,4 +11,7 @@ public class DetailedStatisticsItem {
     private String error;
     private int pages;
     private int lemmas;
+    private int indexes;
+    private int crawledPages;
+    private int queuedPages;
 }
@@ -7,5 +7,6 @@ public class TotalStatistics {
     private int sites;
     private int pages;
     private int lemmas;
+    private int indexes;
     private boolean indexing;
 }
@@ -0,0 +1,48 @@
+package searchengine.index;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+//BM25: rank - частота леммы на странице, длины страниц и число страниц
+//с леммой берутся из индекса в памяти, поэтому запросов к базе не нужно
+@Component
+@ConditionalOnProperty(name = "search-settings.scorer", havingValue = "bm25", matchIfMissing = true)
+public class Bm25Scorer implements RelevanceScorer {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    @Override
+    public QueryScorer prepare(SiteStatistics statistics, List<Postings> postings) {
+        int pageCount = Math.max(statistics.getPageCount(), 1);
+        double averageLength = Math.max(statistics.getAverageLength(), 1);
+        double[] idf = new double[postings.size()];
+        double upperBound = 0;
+        for (int i = 0; i < idf.length; i++) {
+            int documentFrequency = postings.get(i).size();
+            idf[i] = Math.log(1 + (pageCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+            //наибольший вклад - у самой частой леммы на самой короткой странице
+            int maxRank = postings.get(i).maxRank();
+            upperBound += idf[i] * maxRank * (K1 + 1) / (maxRank + K1 * (1 - B));
+        }
+        double bound = upperBound;
+
+        return new QueryScorer() {
+            @Override
+            public double score(int pageId, int[] ranks) {
+                double lengthNorm = K1 * (1 - B + B * statistics.getPageLength(pageId) / averageLength);
+                double score = 0;
+                for (int i = 0; i < ranks.length; i++) {
+                    score += idf[i] * ranks[i] * (K1 + 1) / (ranks[i] + lengthNorm);
+                }
+                return score;
+            }
+
+            @Override
+            public double upperBound() {
+                return bound;
+            }
+        };
+    }
+}
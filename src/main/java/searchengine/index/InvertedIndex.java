@@ -0,0 +1,96 @@
+package searchengine.index;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.Lemma;
+import searchengine.repositories.IndexRepository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+//обратный индекс в памяти: сайт -> лемма -> список страниц с rank,
+//плюс длины страниц каждого сайта для ранжирования
+@Component
+@Log4j2
+public class InvertedIndex {
+    private final IndexRepository indexRepository;
+    private final Map<Integer, Map<Integer, PostingList>> sites = new ConcurrentHashMap<>();
+    private final Map<Integer, SiteStatistics> statistics = new ConcurrentHashMap<>();
+    //растёт при любом изменении индекса, по нему устаревают закэшированные результаты поиска
+    private final AtomicLong generation = new AtomicLong();
+
+    public InvertedIndex(IndexRepository indexRepository) {
+        this.indexRepository = indexRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void load() {
+        long start = System.currentTimeMillis();
+        AtomicLong count = new AtomicLong();
+        try (Stream<Object[]> rows = indexRepository.streamAllPostings()) {
+            rows.forEach(row -> {
+                add((Integer) row[0], (Integer) row[1], (Integer) row[2], (Integer) row[3]);
+                //длина страницы - сумма rank всех её лемм
+                getStatistics((Integer) row[0]).addToPageLength((Integer) row[2], (Integer) row[3]);
+                count.incrementAndGet();
+            });
+        }
+        log.info("Inverted index loaded: " + count.get() + " postings in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    public void add(int siteId, int lemmaId, int pageId, int rank) {
+        sites.computeIfAbsent(siteId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(lemmaId, id -> new PostingList())
+                .add(pageId, rank);
+        generation.incrementAndGet();
+    }
+
+    public void remove(int siteId, int lemmaId, int pageId) {
+        Map<Integer, PostingList> lemmas = sites.get(siteId);
+        PostingList postingList = lemmas == null ? null : lemmas.get(lemmaId);
+        if (postingList != null) {
+            postingList.remove(pageId);
+        }
+        generation.incrementAndGet();
+    }
+
+    public void removeSite(int siteId) {
+        sites.remove(siteId);
+        statistics.remove(siteId);
+        generation.incrementAndGet();
+    }
+
+    public void setPageLength(int siteId, int pageId, int length) {
+        getStatistics(siteId).setPageLength(pageId, length);
+    }
+
+    public SiteStatistics getStatistics(int siteId) {
+        return statistics.computeIfAbsent(siteId, id -> new SiteStatistics());
+    }
+
+    //страницы всех сайтов, для которых известна длина
+    public int getPageCount() {
+        return statistics.values().stream().mapToInt(SiteStatistics::getPageCount).sum();
+    }
+
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public Postings getPostings(int siteId, int lemmaId) {
+        Map<Integer, PostingList> lemmas = sites.get(siteId);
+        PostingList postingList = lemmas == null ? null : lemmas.get(lemmaId);
+        return postingList == null ? Postings.EMPTY : postingList.snapshot();
+    }
+
+    public Postings getPostings(Lemma lemma) {
+        return getPostings(lemma.getSite().getId(), lemma.getId());
+    }
+}
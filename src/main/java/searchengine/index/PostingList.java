@@ -0,0 +1,92 @@
+package searchengine.index;
+
+import java.util.Arrays;
+
+//изменяемый список вхождений леммы: новые записи копятся в буфере
+//и сливаются со сжатой частью при чтении или переполнении буфера
+public class PostingList {
+    private static final int TOMBSTONE = -1;
+    private static final int MIN_PENDING = 256;
+
+    private Postings sealed = Postings.EMPTY;
+    private int[] pendingPageIds = new int[16];
+    private int[] pendingRanks = new int[16];
+    private int pendingCount;
+
+    public synchronized void add(int pageId, int rank) {
+        append(pageId, rank);
+    }
+
+    public synchronized void remove(int pageId) {
+        append(pageId, TOMBSTONE);
+    }
+
+    public synchronized Postings snapshot() {
+        seal();
+        return sealed;
+    }
+
+    private void append(int pageId, int rank) {
+        if (pendingCount == pendingPageIds.length) {
+            pendingPageIds = Arrays.copyOf(pendingPageIds, pendingCount * 2);
+            pendingRanks = Arrays.copyOf(pendingRanks, pendingCount * 2);
+        }
+        pendingPageIds[pendingCount] = pageId;
+        pendingRanks[pendingCount] = rank;
+        pendingCount++;
+
+        if (pendingCount >= Math.max(MIN_PENDING, sealed.size() / 8)) {
+            seal();
+        }
+    }
+
+    private void seal() {
+        if (pendingCount == 0) {
+            return;
+        }
+        long[] order = new long[pendingCount];
+        for (int i = 0; i < pendingCount; i++) {
+            order[i] = ((long) pendingPageIds[i] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        int[] pageIds = new int[sealed.size() + pendingCount];
+        int[] ranks = new int[pageIds.length];
+        int size = 0;
+
+        Postings.Cursor cursor = sealed.cursor();
+        boolean hasSealed = cursor.next();
+        int i = 0;
+        while (i < order.length || hasSealed) {
+            int pendingPageId = i < order.length ? (int) (order[i] >>> 32) : Integer.MAX_VALUE;
+            if (hasSealed && cursor.pageId() < pendingPageId) {
+                pageIds[size] = cursor.pageId();
+                ranks[size] = cursor.rank();
+                size++;
+                hasSealed = cursor.next();
+                continue;
+            }
+            //для одной страницы побеждает последняя запись из буфера
+            while (i + 1 < order.length && (int) (order[i + 1] >>> 32) == pendingPageId) {
+                i++;
+            }
+            int rank = pendingRanks[(int) order[i]];
+            i++;
+            if (hasSealed && cursor.pageId() == pendingPageId) {
+                hasSealed = cursor.next();
+            }
+            if (rank != TOMBSTONE) {
+                pageIds[size] = pendingPageId;
+                ranks[size] = rank;
+                size++;
+            }
+        }
+
+        sealed = Postings.encode(pageIds, ranks, size);
+        pendingCount = 0;
+        if (pendingPageIds.length > MIN_PENDING * 4) {
+            pendingPageIds = new int[16];
+            pendingRanks = new int[16];
+        }
+    }
+}
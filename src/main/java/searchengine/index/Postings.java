@@ -0,0 +1,174 @@
+package searchengine.index;
+
+import java.util.Arrays;
+
+//неизменяемый сжатый список (pageId, rank), отсортированный по pageId:
+//идентификаторы страниц хранятся дельтами, все числа - в формате varint.
+//Список разбит на блоки по BLOCK_SIZE записей, для каждого блока хранится
+//указатель пропуска (смещение, предыдущий и последний pageId)
+public final class Postings {
+    public static final Postings EMPTY = new Postings(new byte[0], 0, 0, new int[0], new int[0], new int[0]);
+
+    private static final int BLOCK_SIZE = 64;
+
+    private final byte[] data;
+    private final int size;
+    private final int maxRank;
+    private final int[] blockOffsets;
+    private final int[] blockBasePageIds;
+    private final int[] blockLastPageIds;
+
+    private Postings(byte[] data, int size, int maxRank, int[] blockOffsets, int[] blockBasePageIds, int[] blockLastPageIds) {
+        this.data = data;
+        this.size = size;
+        this.maxRank = maxRank;
+        this.blockOffsets = blockOffsets;
+        this.blockBasePageIds = blockBasePageIds;
+        this.blockLastPageIds = blockLastPageIds;
+    }
+
+    static Postings encode(int[] pageIds, int[] ranks, int size) {
+        if (size == 0) {
+            return EMPTY;
+        }
+        int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int[] blockOffsets = new int[blocks];
+        int[] blockBasePageIds = new int[blocks];
+        int[] blockLastPageIds = new int[blocks];
+
+        byte[] buffer = new byte[size * 4];
+        int offset = 0;
+        int previousPageId = 0;
+        int maxRank = 0;
+        for (int i = 0; i < size; i++) {
+            if (i % BLOCK_SIZE == 0) {
+                blockOffsets[i / BLOCK_SIZE] = offset;
+                blockBasePageIds[i / BLOCK_SIZE] = previousPageId;
+            }
+            if (buffer.length - offset < 10) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            offset = writeVarInt(buffer, offset, pageIds[i] - previousPageId);
+            offset = writeVarInt(buffer, offset, ranks[i]);
+            previousPageId = pageIds[i];
+            maxRank = Math.max(maxRank, ranks[i]);
+            blockLastPageIds[i / BLOCK_SIZE] = previousPageId;
+        }
+        return new Postings(Arrays.copyOf(buffer, offset), size, maxRank, blockOffsets, blockBasePageIds, blockLastPageIds);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int maxRank() {
+        return maxRank;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    private static int writeVarInt(byte[] buffer, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    public final class Cursor {
+        private int position = -1;
+        private int offset;
+        private int pageId;
+        private int rank;
+
+        private Cursor() {
+        }
+
+        public boolean next() {
+            if (position + 1 >= size) {
+                position = size;
+                return false;
+            }
+            position++;
+            pageId += readVarInt();
+            rank = readVarInt();
+            return true;
+        }
+
+        //переходит к первой записи с pageId >= target: экспоненциальный поиск
+        //по указателям пропуска, затем линейный проход внутри блока
+        public boolean advance(int target) {
+            if (size == 0 || position >= size) {
+                return false;
+            }
+            if (position >= 0 && pageId >= target) {
+                return true;
+            }
+            int block = Math.max(position, 0) / BLOCK_SIZE;
+            if (blockLastPageIds[block] < target) {
+                int targetBlock = findBlock(block + 1, target);
+                if (targetBlock == blockLastPageIds.length) {
+                    position = size;
+                    return false;
+                }
+                position = targetBlock * BLOCK_SIZE - 1;
+                offset = blockOffsets[targetBlock];
+                pageId = blockBasePageIds[targetBlock];
+            }
+            while (next()) {
+                if (pageId >= target) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int pageId() {
+            return pageId;
+        }
+
+        public int rank() {
+            return rank;
+        }
+
+        private int findBlock(int from, int target) {
+            int low = from;
+            int step = 1;
+            int high = from;
+            while (high < blockLastPageIds.length && blockLastPageIds[high] < target) {
+                low = high + 1;
+                high = from + step;
+                step <<= 1;
+            }
+            high = Math.min(high, blockLastPageIds.length);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (blockLastPageIds[middle] < target) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private int readVarInt() {
+            int result = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                result |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package searchengine.index;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+//пересечение списков вхождений: обход начинается с самого короткого списка,
+//остальные догоняют его через Cursor.advance, поэтому стоимость зависит
+//от размера наименьшего списка, а не от числа кандидатов
+public final class PostingsIntersection {
+
+    @FunctionalInterface
+    public interface MatchConsumer {
+        //ranks[i] - rank страницы в postings.get(i); массив переиспользуется между вызовами
+        void accept(int pageId, int[] ranks);
+    }
+
+    private PostingsIntersection() {
+    }
+
+    public static void intersect(List<Postings> postings, MatchConsumer consumer) {
+        int count = postings.size();
+        if (count == 0 || postings.stream().anyMatch(Postings::isEmpty)) {
+            return;
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> postings.get(i).size()));
+
+        Postings.Cursor[] cursors = new Postings.Cursor[count];
+        for (int i = 0; i < count; i++) {
+            cursors[i] = postings.get(order[i]).cursor();
+        }
+        int[] ranks = new int[count];
+
+        Postings.Cursor lead = cursors[0];
+        if (!lead.next()) {
+            return;
+        }
+        int target = lead.pageId();
+        int i = 1;
+        while (true) {
+            if (i == count) {
+                for (int j = 0; j < count; j++) {
+                    ranks[order[j]] = cursors[j].rank();
+                }
+                consumer.accept(target, ranks);
+                if (!lead.next()) {
+                    return;
+                }
+                target = lead.pageId();
+                i = 1;
+                continue;
+            }
+            if (!cursors[i].advance(target)) {
+                return;
+            }
+            int pageId = cursors[i].pageId();
+            if (pageId == target) {
+                i++;
+                continue;
+            }
+            if (!lead.advance(pageId)) {
+                return;
+            }
+            target = lead.pageId();
+            i = 1;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package searchengine.index;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+//прежняя оценка: сумма rank всех лемм запроса на странице
+@Component
+@ConditionalOnProperty(name = "search-settings.scorer", havingValue = "rank-sum")
+public class RankSumScorer implements RelevanceScorer {
+
+    @Override
+    public QueryScorer prepare(SiteStatistics statistics, List<Postings> postings) {
+        long upperBound = 0;
+        for (Postings value : postings) {
+            upperBound += value.maxRank();
+        }
+        double bound = upperBound;
+
+        return new QueryScorer() {
+            @Override
+            public double score(int pageId, int[] ranks) {
+                int score = 0;
+                for (int rank : ranks) {
+                    score += rank;
+                }
+                return score;
+            }
+
+            @Override
+            public double upperBound() {
+                return bound;
+            }
+        };
+    }
+}
@@ -0,0 +1,19 @@
+package searchengine.index;
+
+import java.util.List;
+
+//способ оценки релевантности страницы; реализация выбирается
+//настройкой search-settings.scorer
+public interface RelevanceScorer {
+
+    //postings - списки вхождений лемм запроса на одном сайте
+    QueryScorer prepare(SiteStatistics statistics, List<Postings> postings);
+
+    interface QueryScorer {
+        //ranks[i] - rank страницы в postings.get(i)
+        double score(int pageId, int[] ranks);
+
+        //оценка сверху для любой страницы сайта
+        double upperBound();
+    }
+}
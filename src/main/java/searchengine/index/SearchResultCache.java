@@ -0,0 +1,74 @@
+package searchengine.index;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+//кэш ранжированных результатов поиска: ключ - отсортированный набор лемм
+//запроса и сайт. Запись действительна, пока не изменилось поколение
+//обратного индекса, и пока в ней хватает страниц для запрошенного offset + limit
+@Component
+public class SearchResultCache {
+    private static final int MAX_ENTRIES = 1000;
+
+    private final InvertedIndex invertedIndex;
+    private final Map<String, RankedResult> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RankedResult> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private long hits;
+    private long misses;
+
+    public SearchResultCache(InvertedIndex invertedIndex, MeterRegistry meterRegistry) {
+        this.invertedIndex = invertedIndex;
+        Gauge.builder("search.cache.hit.rate", this, SearchResultCache::getHitRate).register(meterRegistry);
+    }
+
+    public static String getKey(List<String> lemmas, String site) {
+        return String.join(" ", new TreeSet<>(lemmas)) + "|" + (site == null ? "" : site.trim());
+    }
+
+    public synchronized RankedResult get(String key, int requiredPages) {
+        RankedResult result = entries.get(key);
+        if (result == null || result.getGeneration() != invertedIndex.getGeneration()
+                || (result.getPages().size() < requiredPages && result.getPages().size() < result.getTotalHits())) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return result;
+    }
+
+    public synchronized void put(String key, RankedResult result) {
+        if (result.getGeneration() == invertedIndex.getGeneration()) {
+            entries.put(key, result);
+        }
+    }
+
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Getter
+    public static class RankedResult {
+        //поколение индекса, прочитанное до начала ранжирования
+        private final long generation;
+        private final List<TopKCollector.ScoredPage> pages;
+        private final int totalHits;
+
+        public RankedResult(long generation, List<TopKCollector.ScoredPage> pages, int totalHits) {
+            this.generation = generation;
+            this.pages = List.copyOf(pages);
+            this.totalHits = totalHits;
+        }
+    }
+}
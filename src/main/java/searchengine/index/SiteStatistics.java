@@ -0,0 +1,42 @@
+package searchengine.index;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//статистика сайта для ранжирования: длина каждой страницы (число слов,
+//у которых есть лемма) и суммарная длина для расчёта средней
+public class SiteStatistics {
+    private final Map<Integer, Integer> pageLengths = new ConcurrentHashMap<>();
+    private final AtomicLong totalLength = new AtomicLong();
+
+    public void setPageLength(int pageId, int length) {
+        Integer previous = pageLengths.put(pageId, length);
+        totalLength.addAndGet(length - (previous == null ? 0 : previous));
+    }
+
+    public void removePage(int pageId) {
+        Integer previous = pageLengths.remove(pageId);
+        if (previous != null) {
+            totalLength.addAndGet(-previous);
+        }
+    }
+
+    void addToPageLength(int pageId, int length) {
+        pageLengths.merge(pageId, length, Integer::sum);
+        totalLength.addAndGet(length);
+    }
+
+    public int getPageLength(int pageId) {
+        return pageLengths.getOrDefault(pageId, 0);
+    }
+
+    public int getPageCount() {
+        return pageLengths.size();
+    }
+
+    public double getAverageLength() {
+        int pageCount = pageLengths.size();
+        return pageCount == 0 ? 0 : (double) totalLength.get() / pageCount;
+    }
+}
@@ -0,0 +1,121 @@
+package searchengine.index;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+//k лучших страниц по score в min-куче фиксированного размера; остальные
+//совпадения только подсчитываются. Порог кучи позволяет вызывающему коду
+//пропускать кандидатов, чья верхняя оценка score его не превышает
+public class TopKCollector {
+    private final int k;
+    private final int[] pageIds;
+    private final double[] scores;
+    private int size;
+    private int totalHits;
+
+    public TopKCollector(int k) {
+        this.k = Math.max(0, k);
+        this.pageIds = new int[this.k];
+        this.scores = new double[this.k];
+    }
+
+    //каждый вызов - одно совпадение, даже если страница не попала в k лучших
+    public void offer(int pageId, double score) {
+        totalHits++;
+        if (size < k) {
+            pageIds[size] = pageId;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (k > 0 && isBetter(score, pageId, 0)) {
+            pageIds[0] = pageId;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    //совпадение, которое заведомо не может попасть в k лучших
+    public void count() {
+        totalHits++;
+    }
+
+    public boolean isFull() {
+        return size == k;
+    }
+
+    //минимальный score, который ещё может попасть в кучу
+    public double getThreshold() {
+        return size < k ? Double.NEGATIVE_INFINITY : k == 0 ? Double.POSITIVE_INFINITY : scores[0];
+    }
+
+    public int getTotalHits() {
+        return totalHits;
+    }
+
+    //лучшие страницы по убыванию score, при равенстве - по возрастанию id
+    public List<ScoredPage> getTop() {
+        List<ScoredPage> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(new ScoredPage(pageIds[i], scores[i]));
+        }
+        result.sort(Comparator.comparingDouble(ScoredPage::getScore).reversed()
+                .thenComparingInt(ScoredPage::getPageId));
+        return result;
+    }
+
+    private boolean isBetter(double score, int pageId, int index) {
+        return score > scores[index] || (score == scores[index] && pageId < pageIds[index]);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!isBetter(scores[parent], pageIds[parent], index)) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && isBetter(scores[smallest], pageIds[smallest], left)) {
+                smallest = left;
+            }
+            if (right < size && isBetter(scores[smallest], pageIds[smallest], right)) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int pageId = pageIds[i];
+        pageIds[i] = pageIds[j];
+        pageIds[j] = pageId;
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+
+    @Getter
+    public static class ScoredPage {
+        private final int pageId;
+        private final double score;
+
+        public ScoredPage(int pageId, double score) {
+            this.pageId = pageId;
+            this.score = score;
+        }
+    }
+}
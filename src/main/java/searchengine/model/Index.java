@@ -7,7 +7,9 @@ import lombok.Data;
 import java.util.Objects;
 
 @Entity
-@Table(name = "`Index`")
+//по (page_id, lemma_id) идут точечные UPDATE/DELETE при переиндексации страницы,
+//выборка лемм страниц и проверка внешнего ключа при удалении страницы
+@Table(name = "`Index`", indexes = @jakarta.persistence.Index(columnList = "page_id, lemma_id", unique = true, name = "pageLemmaIndex"))
 @Data
 public class Index {
     @Id
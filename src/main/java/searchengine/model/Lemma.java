@@ -8,7 +8,7 @@ import java.util.List;
 import java.util.Objects;
 
 @Entity
-@Table(name = "Lemma")
+@Table(name = "Lemma", uniqueConstraints = @UniqueConstraint(columnNames = {"site_id", "lemma"}))
 @Data
 public class Lemma {
     @Id
@@ -29,6 +29,25 @@ public class Page {
     @Column(name = "code")
     private int code;
 
-    @Column(name = "content", columnDefinition = "TEXT")
-    private String content;
+    @Column(name = "title", columnDefinition = "TEXT")
+    private String title;
+
+    //текст страницы без разметки, по нему строятся сниппеты
+    @Column(name = "text", columnDefinition = "TEXT")
+    private String text;
+
+    //позиции слов в text и их леммы, см. PageText
+    @Column(name = "tokens")
+    private byte[] tokens;
+
+    //SHA-256 заголовка и текста: при повторном обходе по нему пропускаются неизменённые страницы
+    @Column(name = "content_hash", columnDefinition = "VARCHAR(64)")
+    private String contentHash;
+
+    //заголовки ответа для условного GET при повторном обходе
+    @Column(name = "etag", columnDefinition = "VARCHAR(255)")
+    private String etag;
+
+    @Column(name = "last_modified", columnDefinition = "VARCHAR(64)")
+    private String lastModified;
 }
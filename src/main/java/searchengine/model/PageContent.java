@@ -0,0 +1,26 @@
+package searchengine.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+//исходный html страницы, сжатый ContentCompressor. Хранится отдельно от page,
+//чтобы выборки страниц не тянули за собой весь код страницы
+@Entity
+@Table(name = "page_content")
+@Data
+public class PageContent {
+    @Id
+    @Column(name = "page_id")
+    private int pageId;
+
+    @OneToOne(fetch = FetchType.LAZY)
+    @MapsId
+    @JoinColumn(name = "page_id")
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Page page;
+
+    @Column(name = "content")
+    private byte[] content;
+}
@@ -41,4 +41,15 @@ public class Site {
     @Column(name = "name", columnDefinition = "VARCHAR(255)")
     @NotNull
     private String name;
+
+    //счётчики ведёт IndexingPipeline SQL-запросами, JPA их только читает, см. SiteCounters
+    @Column(name = "page_count", columnDefinition = "INT NOT NULL DEFAULT 0", insertable = false, updatable = false)
+    private int pageCount;
+
+    //леммы с frequency > 0
+    @Column(name = "lemma_count", columnDefinition = "INT NOT NULL DEFAULT 0", insertable = false, updatable = false)
+    private int lemmaCount;
+
+    @Column(name = "index_count", columnDefinition = "INT NOT NULL DEFAULT 0", insertable = false, updatable = false)
+    private int indexCount;
 }
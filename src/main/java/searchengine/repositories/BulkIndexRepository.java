@@ -0,0 +1,253 @@
+package searchengine.repositories;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import searchengine.utils.PageVersion;
+import searchengine.utils.ParsedPage;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+//пакетная запись страниц, лемм и индексов многострочными INSERT в обход JPA.
+//Каждая пакетная операция измеряется таймером db.batch и счётчиком строк db.batch.rows.
+//Кроме PostgreSQL поддерживается H2 в режиме PostgreSQL (стенд CrawlReplayBenchmark):
+//в нём нет ON CONFLICT и RETURNING, вместо них MERGE и FINAL TABLE
+@Repository
+public class BulkIndexRepository {
+    private static final int ROWS_PER_STATEMENT = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    private volatile Boolean h2;
+
+    public BulkIndexRepository(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    //возвращает path -> id только для реально вставленных страниц
+    public Map<String, Integer> insertPages(int siteId, List<ParsedPage> pages) {
+        return timed("insertPages", pages.size(), () -> doInsertPages(siteId, pages));
+    }
+
+    private Map<String, Integer> doInsertPages(int siteId, List<ParsedPage> pages) {
+        Map<String, Integer> result = new HashMap<>();
+        for (int from = 0; from < pages.size(); from += ROWS_PER_STATEMENT) {
+            List<ParsedPage> chunk = pages.subList(from, Math.min(from + ROWS_PER_STATEMENT, pages.size()));
+            if (isH2()) {
+                //страницы пишет только поток IndexingPipeline, поэтому проверка и вставка не гоняются
+                Map<String, Integer> existing = findPageIds(siteId, chunk.stream().map(ParsedPage::getPath).toList());
+                chunk = chunk.stream().filter(page -> !existing.containsKey(page.getPath())).toList();
+                if (chunk.isEmpty()) {
+                    continue;
+                }
+            }
+            StringBuilder sql = new StringBuilder("INSERT INTO page (site_id, path, code, title, text, tokens, content_hash, etag, last_modified) VALUES ");
+            List<Object> args = new ArrayList<>();
+            for (ParsedPage page : chunk) {
+                sql.append(args.isEmpty() ? "" : ", ").append("(?, ?, ?, ?, ?, ?, ?, ?, ?)");
+                args.add(siteId);
+                args.add(page.getPath());
+                args.add(page.getCode());
+                args.add(page.getTitle());
+                args.add(page.getText());
+                args.add(page.getTokens());
+                args.add(page.getContentHash());
+                args.add(page.getEtag());
+                args.add(page.getLastModified());
+            }
+            String query = isH2() ? "SELECT id, path FROM FINAL TABLE (" + sql + ")"
+                    : sql.append(" ON CONFLICT (path, site_id) DO NOTHING RETURNING id, path").toString();
+            jdbcTemplate.query(query,
+                    (RowCallbackHandler) rs -> result.put(rs.getString("path"), rs.getInt("id")),
+                    args.toArray());
+        }
+        return result;
+    }
+
+    //увеличивает frequency существующих лемм сайта и создаёт новые, возвращает lemma -> id;
+    //новые значения frequency записываются в frequencies
+    public Map<String, Integer> upsertLemmas(int siteId, Map<String, Integer> frequencyDeltas, Map<String, Integer> frequencies) {
+        return timed("upsertLemmas", frequencyDeltas.size(), () -> doUpsertLemmas(siteId, frequencyDeltas, frequencies));
+    }
+
+    private Map<String, Integer> doUpsertLemmas(int siteId, Map<String, Integer> frequencyDeltas, Map<String, Integer> frequencies) {
+        Map<String, Integer> result = new HashMap<>();
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(frequencyDeltas.entrySet());
+        for (int from = 0; from < entries.size(); from += ROWS_PER_STATEMENT) {
+            List<Map.Entry<String, Integer>> chunk = entries.subList(from, Math.min(from + ROWS_PER_STATEMENT, entries.size()));
+            StringBuilder values = new StringBuilder();
+            List<Object> args = new ArrayList<>();
+            for (Map.Entry<String, Integer> entry : chunk) {
+                values.append(args.isEmpty() ? "" : ", ")
+                        .append(isH2() ? "(CAST(? AS INT), CAST(? AS VARCHAR(255)), CAST(? AS INT))" : "(?, ?, ?)");
+                args.add(siteId);
+                args.add(entry.getKey());
+                args.add(entry.getValue());
+            }
+            String sql = isH2()
+                    ? "SELECT id, lemma, frequency FROM FINAL TABLE (MERGE INTO lemma l USING (VALUES " + values
+                    + ") AS v (site_id, lemma, frequency) ON l.site_id = v.site_id AND l.lemma = v.lemma"
+                    + " WHEN MATCHED THEN UPDATE SET frequency = l.frequency + v.frequency"
+                    + " WHEN NOT MATCHED THEN INSERT (site_id, lemma, frequency) VALUES (v.site_id, v.lemma, v.frequency))"
+                    : "INSERT INTO lemma (site_id, lemma, frequency) VALUES " + values
+                    + " ON CONFLICT (site_id, lemma) DO UPDATE SET frequency = lemma.frequency + excluded.frequency"
+                    + " RETURNING id, lemma, frequency";
+            jdbcTemplate.query(sql,
+                    (RowCallbackHandler) rs -> {
+                        result.put(rs.getString("lemma"), rs.getInt("id"));
+                        frequencies.put(rs.getString("lemma"), rs.getInt("frequency"));
+                    },
+                    args.toArray());
+        }
+        return result;
+    }
+
+    //перезаписывает страницы, изменившиеся с прошлого обхода
+    public void updatePages(List<ParsedPage> pages) {
+        batchUpdate("updatePages", "UPDATE page SET code = ?, title = ?, text = ?, tokens = ?, content_hash = ?, etag = ?, last_modified = ? WHERE id = ?",
+                pages, (ps, page) -> {
+                    ps.setInt(1, page.getCode());
+                    ps.setString(2, page.getTitle());
+                    ps.setString(3, page.getText());
+                    ps.setBytes(4, page.getTokens());
+                    ps.setString(5, page.getContentHash());
+                    ps.setString(6, page.getEtag());
+                    ps.setString(7, page.getLastModified());
+                    ps.setInt(8, page.getPageId());
+                });
+    }
+
+    //содержимое page_content удаляется каскадно
+    public void deletePages(Collection<Integer> pageIds) {
+        batchUpdate("deletePages", "DELETE FROM page WHERE id = ?",
+                new ArrayList<>(pageIds), (ps, pageId) -> ps.setInt(1, pageId));
+    }
+
+    //page_id -> страница, чьё содержимое записывается
+    public void insertPageContents(Map<Integer, ParsedPage> pages) {
+        String sql = isH2() ? "MERGE INTO page_content (page_id, content) KEY (page_id) VALUES (?, ?)"
+                : "INSERT INTO page_content (page_id, content) VALUES (?, ?) ON CONFLICT (page_id) DO UPDATE SET content = excluded.content";
+        batchUpdate("insertPageContents", sql,
+                new ArrayList<>(pages.entrySet()), (ps, entry) -> {
+                    ps.setInt(1, entry.getKey());
+                    ps.setBytes(2, entry.getValue().getCompressedContent());
+                });
+    }
+
+    public void addSiteCounts(int siteId, int pageDelta, int lemmaDelta, int indexDelta) {
+        timed("addSiteCounts", 1, () -> jdbcTemplate.update("UPDATE site SET page_count = page_count + ?, lemma_count = lemma_count + ?, index_count = index_count + ? WHERE id = ?",
+                pageDelta, lemmaDelta, indexDelta, siteId));
+    }
+
+    //время только сдвигается вперёд: запоздавший пакет не перезапишет более позднее сохранение сайта
+    public void updateStatusTimes(Map<Integer, LocalDateTime> times) {
+        batchUpdate("updateStatusTimes", "UPDATE site SET status_time = GREATEST(status_time, ?) WHERE id = ?",
+                new ArrayList<>(times.entrySet()), (ps, entry) -> {
+                    ps.setTimestamp(1, Timestamp.valueOf(entry.getValue()));
+                    ps.setInt(2, entry.getKey());
+                });
+    }
+
+    //каждая строка - {page_id, lemma_id, rank}
+    public void insertIndexes(List<int[]> rows) {
+        batchUpdate("insertIndexes", "INSERT INTO \"Index\" (page_id, lemma_id, \"rank\") VALUES (?, ?, ?)",
+                rows, (ps, row) -> {
+                    ps.setInt(1, row[0]);
+                    ps.setInt(2, row[1]);
+                    ps.setInt(3, row[2]);
+                });
+    }
+
+    public void updateIndexes(List<int[]> rows) {
+        batchUpdate("updateIndexes", "UPDATE \"Index\" SET \"rank\" = ? WHERE page_id = ? AND lemma_id = ?",
+                rows, (ps, row) -> {
+                    ps.setInt(1, row[2]);
+                    ps.setInt(2, row[0]);
+                    ps.setInt(3, row[1]);
+                });
+    }
+
+    public void deleteIndexes(List<int[]> rows) {
+        batchUpdate("deleteIndexes", "DELETE FROM \"Index\" WHERE page_id = ? AND lemma_id = ?",
+                rows, (ps, row) -> {
+                    ps.setInt(1, row[0]);
+                    ps.setInt(2, row[1]);
+                });
+    }
+
+    //сохранённые леммы страниц с rank: page_id -> lemma -> rank
+    public Map<Integer, Map<String, Integer>> findPageLemmas(Collection<Integer> pageIds) {
+        return timed("findPageLemmas", pageIds.size(), () -> doFindPageLemmas(pageIds));
+    }
+
+    private Map<Integer, Map<String, Integer>> doFindPageLemmas(Collection<Integer> pageIds) {
+        Map<Integer, Map<String, Integer>> result = new HashMap<>();
+        List<Integer> ids = new ArrayList<>(pageIds);
+        for (int from = 0; from < ids.size(); from += ROWS_PER_STATEMENT) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + ROWS_PER_STATEMENT, ids.size()));
+            String sql = "SELECT i.page_id, l.lemma, i.\"rank\" FROM \"Index\" i JOIN lemma l ON l.id = i.lemma_id"
+                    + " WHERE i.page_id IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            jdbcTemplate.query(sql,
+                    (RowCallbackHandler) rs -> result.computeIfAbsent(rs.getInt("page_id"), id -> new HashMap<>())
+                            .put(rs.getString("lemma"), rs.getInt("rank")),
+                    chunk.toArray());
+        }
+        return result;
+    }
+
+    //path -> id для уже сохранённых страниц сайта из paths
+    public Map<String, Integer> findPageIds(int siteId, List<String> paths) {
+        Map<String, Integer> result = new HashMap<>();
+        for (int from = 0; from < paths.size(); from += ROWS_PER_STATEMENT) {
+            List<String> chunk = paths.subList(from, Math.min(from + ROWS_PER_STATEMENT, paths.size()));
+            List<Object> args = new ArrayList<>(chunk.size() + 1);
+            args.add(siteId);
+            args.addAll(chunk);
+            String sql = "SELECT id, path FROM page WHERE site_id = ? AND path IN ("
+                    + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            jdbcTemplate.query(sql,
+                    (RowCallbackHandler) rs -> result.put(rs.getString("path"), rs.getInt("id")),
+                    args.toArray());
+        }
+        return result;
+    }
+
+    //path -> сохранённая версия для всех страниц сайта
+    public Map<String, PageVersion> findPageVersions(int siteId) {
+        Map<String, PageVersion> result = new HashMap<>();
+        jdbcTemplate.query("SELECT id, path, etag, last_modified, content_hash FROM page WHERE site_id = ?",
+                (RowCallbackHandler) rs -> result.put(rs.getString("path"), new PageVersion(rs.getInt("id"),
+                        rs.getString("etag"), rs.getString("last_modified"), rs.getString("content_hash"))),
+                siteId);
+        return result;
+    }
+
+    private boolean isH2() {
+        if (h2 == null) {
+            h2 = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    connection.getMetaData().getDatabaseProductName().equals("H2"));
+        }
+        return h2;
+    }
+
+    private <T> void batchUpdate(String operation, String sql, List<T> rows, ParameterizedPreparedStatementSetter<T> setter) {
+        timed(operation, rows.size(), () -> jdbcTemplate.batchUpdate(sql, rows, ROWS_PER_STATEMENT, setter));
+    }
+
+    private <T> T timed(String operation, int rows, Supplier<T> action) {
+        meterRegistry.counter("db.batch.rows", "operation", operation).increment(rows);
+        return meterRegistry.timer("db.batch", "operation", operation).record(action);
+    }
+}
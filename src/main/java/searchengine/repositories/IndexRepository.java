@@ -1,15 +1,20 @@
 package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import searchengine.model.Index;
 import searchengine.model.Lemma;
 import searchengine.model.Page;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface IndexRepository extends JpaRepository<Index, Integer> {
     List<Index> findByLemma(Lemma s);
     List<Index> findByLemmaAndPage(Lemma lemma, Page page);
+
+    @Query("SELECT i.lemma.site.id, i.lemma.id, i.page.id, i.rank FROM Index i")
+    Stream<Object[]> streamAllPostings();
 }
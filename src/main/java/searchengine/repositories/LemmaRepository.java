@@ -2,10 +2,12 @@ package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import searchengine.model.Lemma;
 import searchengine.model.Site;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -14,8 +16,10 @@ public interface LemmaRepository extends JpaRepository<Lemma, Integer> {
 
     List<Lemma> findByLemma(String queryLemma);
 
-    @Query(value = "SELECT sum(frequency) FROM search_engine.lemma where lemma = ?1", nativeQuery = true)
-    Integer sumFrequencyWhereLemmaLike(String lemma);
+    List<Lemma> findBySite(Site site);
+
+    @Query("SELECT l FROM Lemma l JOIN FETCH l.site WHERE l.lemma IN :lemmas")
+    List<Lemma> findAllByLemmaIn(@Param("lemmas") Collection<String> lemmas);
 
     int countBySite(Site site);
 }
@@ -0,0 +1,125 @@
+package searchengine.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import searchengine.dto.progress.IndexingProgress;
+import searchengine.dto.progress.SiteProgress;
+import searchengine.model.Site;
+import searchengine.utils.CrawlScheduler;
+import searchengine.utils.SiteCounters;
+import searchengine.utils.WebCrawler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//раз в секунду рассылает подписчикам SSE состояние обхода: всё берётся
+//из счётчиков краулеров и SiteCounters, к базе запросов нет
+@Service
+@Log4j2
+public class IndexingProgressServiceImpl implements IndexingProgressService {
+    private static final long PUBLISH_INTERVAL_MS = 1000;
+    private static final long EMITTER_TIMEOUT_MS = 30 * 60 * 1000;
+
+    private final CrawlScheduler crawlScheduler;
+    private final SiteCounters siteCounters;
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    //url сайта -> {время, число обработанных страниц} на прошлой рассылке
+    private final Map<String, long[]> previousSamples = new HashMap<>();
+    private ScheduledExecutorService executor;
+
+    public IndexingProgressServiceImpl(CrawlScheduler crawlScheduler, SiteCounters siteCounters) {
+        this.crawlScheduler = crawlScheduler;
+        this.siteCounters = siteCounters;
+    }
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "indexing-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::publish, PUBLISH_INTERVAL_MS, PUBLISH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        emitters.forEach(SseEmitter::complete);
+    }
+
+    @Override
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        emitters.add(emitter);
+        return emitter;
+    }
+
+    private void publish() {
+        if (emitters.isEmpty()) {
+            previousSamples.clear();
+            return;
+        }
+        try {
+            IndexingProgress progress = getProgress();
+            for (SseEmitter emitter : emitters) {
+                try {
+                    emitter.send(SseEmitter.event().name("progress").data(progress));
+                } catch (IOException | IllegalStateException e) {
+                    //клиент отключился
+                    emitters.remove(emitter);
+                }
+            }
+        } catch (Exception e) {
+            log.error("error", e);
+        }
+    }
+
+    private IndexingProgress getProgress() {
+        long now = System.currentTimeMillis();
+        List<SiteProgress> sites = new ArrayList<>();
+        Map<String, long[]> samples = new HashMap<>();
+        for (WebCrawler webCrawler : crawlScheduler.getCrawlers()) {
+            Site site = webCrawler.getSite();
+            SiteCounters.Counters counters = siteCounters.get(site.getId());
+            int crawledPages = webCrawler.getCrawledPages();
+
+            SiteProgress item = new SiteProgress();
+            item.setUrl(site.getUrl());
+            item.setName(site.getName());
+            item.setCrawledPages(crawledPages);
+            item.setUnchangedPages(webCrawler.getUnchangedPages());
+            item.setQueuedPages(webCrawler.getQueuedPages());
+            item.setErrors(webCrawler.getErrorPages());
+            item.setPages(counters.getPages().get());
+            item.setLemmas(counters.getLemmas().get());
+
+            long[] previous = previousSamples.get(site.getUrl());
+            if (previous != null && now > previous[0]) {
+                item.setPagesPerSecond((crawledPages - previous[1]) * 1000.0 / (now - previous[0]));
+            }
+            samples.put(site.getUrl(), new long[]{now, crawledPages});
+            sites.add(item);
+        }
+        previousSamples.clear();
+        previousSamples.putAll(samples);
+
+        IndexingProgress progress = new IndexingProgress();
+        progress.setIndexing(WebCrawler.isIndexing());
+        progress.setSites(sites);
+        return progress;
+    }
+}
@@ -3,10 +3,16 @@ package searchengine.services;
 import org.springframework.http.ResponseEntity;
 import searchengine.dto.indexing.IndexingResponse;
 
+import java.util.List;
+
 public interface IndexingService {
-    ResponseEntity<IndexingResponse> startIndexing();
+    ResponseEntity<IndexingResponse> startIndexing(Boolean incremental);
 
     ResponseEntity<IndexingResponse> stopIndexing();
 
+    ResponseEntity<IndexingResponse> stopIndexing(String siteUrl);
+
     ResponseEntity<IndexingResponse> indexPage(String url);
+
+    ResponseEntity<IndexingResponse> indexPages(List<String> urls);
 }
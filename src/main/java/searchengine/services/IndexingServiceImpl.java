@@ -1,6 +1,9 @@
 package searchengine.services;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.log4j.Log4j2;
+import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.springframework.http.HttpStatus;
@@ -8,23 +11,42 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import searchengine.config.SitesList;
 import searchengine.config.CrawlerConfig;
+import searchengine.dto.indexing.IndexPagesResponse;
 import searchengine.dto.indexing.IndexingErrorResponse;
 import searchengine.dto.indexing.IndexingResponse;
 import searchengine.dto.indexing.IndexingSuccessResponse;
 import searchengine.exceptions.IndexingStoppedException;
+import searchengine.index.InvertedIndex;
 import searchengine.model.*;
-import searchengine.repositories.IndexRepository;
-import searchengine.repositories.LemmaRepository;
-import searchengine.repositories.PageRepository;
+import searchengine.repositories.BulkIndexRepository;
 import searchengine.repositories.SiteRepository;
+import searchengine.utils.CrawlScheduler;
+import searchengine.utils.HostRateLimiter;
+import searchengine.utils.IndexingPipeline;
 import searchengine.utils.LemmaFinder;
+import searchengine.utils.PageText;
+import searchengine.utils.PageVersion;
+import searchengine.utils.ParsedPage;
+import searchengine.utils.StatusTimeWriter;
 import searchengine.utils.WebCrawler;
+import searchengine.utils.WordFormCache;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ForkJoinPool;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,32 +55,54 @@ import java.util.regex.Pattern;
 public class IndexingServiceImpl implements IndexingService {
     private final SitesList sites;
     private final SiteRepository siteRepository;
-    private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
     private final CrawlerConfig crawlerConfig;
-    private ForkJoinPool forkJoinPool;
-
-    public IndexingServiceImpl(SitesList sites, SiteRepository siteRepository, PageRepository pageRepository, LemmaRepository lemmaRepository, IndexRepository indexRepository, CrawlerConfig crawlerConfig) {
+    private final InvertedIndex invertedIndex;
+    private final IndexingPipeline indexingPipeline;
+    private final CrawlScheduler crawlScheduler;
+    private final HostRateLimiter rateLimiter;
+    private final LemmaFinder lemmaFinder;
+    private final BulkIndexRepository bulkIndexRepository;
+    private final StatusTimeWriter statusTimeWriter;
+    private final MeterRegistry meterRegistry;
+    //переиндексация отдельных страниц: фиксированные потоки и ограниченная очередь
+    private final ThreadPoolExecutor pageIndexExecutor;
+    private final Set<String> queuedPages = ConcurrentHashMap.newKeySet();
+    //поток start() ещё работает: после остановки он дожидается записи страниц,
+    //и новый обход до его завершения не запускается
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public IndexingServiceImpl(SitesList sites, SiteRepository siteRepository, CrawlerConfig crawlerConfig, InvertedIndex invertedIndex, IndexingPipeline indexingPipeline, CrawlScheduler crawlScheduler, HostRateLimiter rateLimiter, LemmaFinder lemmaFinder, BulkIndexRepository bulkIndexRepository, StatusTimeWriter statusTimeWriter, MeterRegistry meterRegistry) {
         this.sites = sites;
         this.siteRepository = siteRepository;
-        this.pageRepository = pageRepository;
-        this.lemmaRepository = lemmaRepository;
-        this.indexRepository = indexRepository;
         this.crawlerConfig = crawlerConfig;
+        this.invertedIndex = invertedIndex;
+        this.indexingPipeline = indexingPipeline;
+        this.crawlScheduler = crawlScheduler;
+        this.rateLimiter = rateLimiter;
+        this.lemmaFinder = lemmaFinder;
+        this.bulkIndexRepository = bulkIndexRepository;
+        this.statusTimeWriter = statusTimeWriter;
+        this.meterRegistry = meterRegistry;
+        this.pageIndexExecutor = new ThreadPoolExecutor(crawlerConfig.getPageIndexThreads(), crawlerConfig.getPageIndexThreads(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(crawlerConfig.getPageIndexQueueCapacity()));
     }
 
     @Override
-    public ResponseEntity<IndexingResponse> startIndexing() {
+    public ResponseEntity<IndexingResponse> startIndexing(Boolean incremental) {
         IndexingResponse response = null;
         if(WebCrawler.isIndexing()){
             response = new IndexingErrorResponse("Indexing is already started", false);
             return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+        }else if(!running.compareAndSet(false, true)){
+            response = new IndexingErrorResponse("Previous indexing is still stopping", false);
+            return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
         }else{
+            WebCrawler.setIndexing(true);
+            boolean incrementalMode = incremental == null ? crawlerConfig.isIncremental() : incremental;
             Thread thread = new Thread(){
                 @Override
                 public void run() {
-                    IndexingServiceImpl.this.start();
+                    IndexingServiceImpl.this.start(incrementalMode);
                 }
             };
             thread.start();
@@ -80,12 +124,23 @@ public class IndexingServiceImpl implements IndexingService {
         }
     }
 
+    @Override
+    public ResponseEntity<IndexingResponse> stopIndexing(String siteUrl) {
+        IndexingResponse response = null;
+        if(crawlScheduler.stop(siteUrl)){
+            response = new IndexingSuccessResponse(true);
+            return new ResponseEntity<>(response, HttpStatus.OK);
+        }else{
+            response = new IndexingErrorResponse("Indexing of this site is not started", false);
+            return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+        }
+    }
+
     @Override
     public ResponseEntity<IndexingResponse> indexPage(String entryUrl) {
-        String urlToIndex = checkUrl(entryUrl);
+        String urlToIndex = toSiteUrl(entryUrl);
 
-        String domainName = getFullDomainName(urlToIndex);
-        Site site = siteRepository.findByUrl(domainName);
+        Site site = urlToIndex == null ? null : siteRepository.findByUrl(getFullDomainName(urlToIndex));
         IndexingResponse response = null;
         if(site == null){
             response = new IndexingErrorResponse(
@@ -93,163 +148,213 @@ public class IndexingServiceImpl implements IndexingService {
                     false);
             return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
         }
-        Thread thread = new Thread(){
-            @Override
-            public void run() {
-                indexSinglePage(urlToIndex);
-            }
-        };
-        thread.start();
+        if(!enqueuePage(urlToIndex)){
+            response = new IndexingErrorResponse("Page indexing queue is full", false);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").body(response);
+        }
         response = new IndexingSuccessResponse(true);
         return new ResponseEntity<>(response, HttpStatus.OK);
     }
 
-    private void start(){
-        Site site = null;
+    @Override
+    public ResponseEntity<IndexingResponse> indexPages(List<String> urls) {
+        List<String> invalid = new ArrayList<>();
+        List<String> rejected = new ArrayList<>();
+        Map<String, Boolean> knownSites = new HashMap<>();
+        int accepted = 0;
+        for (String entryUrl : urls) {
+            String urlToIndex = toSiteUrl(entryUrl);
+            //одна проверка сайта на домен, а не на каждую ссылку
+            boolean siteExists = urlToIndex != null && knownSites.computeIfAbsent(getFullDomainName(urlToIndex),
+                    domainName -> siteRepository.findByUrl(domainName) != null);
+            if (!siteExists) {
+                invalid.add(entryUrl);
+            } else if (enqueuePage(urlToIndex)) {
+                accepted++;
+            } else {
+                rejected.add(entryUrl);
+            }
+        }
+        IndexingResponse response = new IndexPagesResponse(rejected.isEmpty() && invalid.isEmpty(), accepted, invalid, rejected);
+        if (!rejected.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").body(response);
+        }
+        return new ResponseEntity<>(response, invalid.isEmpty() ? HttpStatus.OK : HttpStatus.BAD_REQUEST);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pageIndexExecutor.shutdownNow();
+    }
+
+    //false - очередь заполнена. Ссылка, которая уже ждёт в очереди, второй раз не ставится:
+    //страница всё равно будет загружена заново, когда до неё дойдёт очередь
+    private boolean enqueuePage(String url) {
+        if (!queuedPages.add(url)) {
+            return true;
+        }
         try {
-            forkJoinPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-            List<Site> siteList = this.sites.getSites();
+            pageIndexExecutor.execute(() -> {
+                queuedPages.remove(url);
+                indexSinglePage(url);
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            queuedPages.remove(url);
+            return false;
+        }
+    }
+
+    //все сайты обходятся одновременно, потоки делит CrawlScheduler
+    private void start(boolean incremental){
+        List<Site> siteList = this.sites.getSites();
+        ExecutorService siteExecutor = null;
+        try {
+            if (siteList == null || siteList.isEmpty()) {
+                return;
+            }
+            siteExecutor = Executors.newFixedThreadPool(siteList.size());
+            crawlScheduler.open();
 
+            List<Future<?>> futures = new ArrayList<>();
             for (Site value : siteList) {
-                String foundSiteUrl = value.getUrl();
-                if (siteRepository.existsByUrl(foundSiteUrl)) {
+                futures.add(siteExecutor.submit(() -> indexSite(value, incremental)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (Exception e) {
+            log.error("error", e);
+        } finally {
+            if (siteExecutor != null) {
+                siteExecutor.shutdown();
+            }
+            crawlScheduler.close();
+            WebCrawler.setIndexing(false);
+            running.set(false);
+            WordFormCache wordFormCache = lemmaFinder.getWordFormCache();
+            log.info("Word form cache: " + wordFormCache.size() + " entries, hit rate " + wordFormCache.getHitRate());
+        }
+    }
+
+    private void indexSite(Site value, boolean incremental) {
+        Site site = null;
+        try {
+            String foundSiteUrl = value.getUrl();
+            Site foundSite = siteRepository.findByUrl(foundSiteUrl);
+            Map<String, PageVersion> knownPages = Map.of();
+            long start = System.currentTimeMillis();
+
+            if (incremental && foundSite != null) {
+                //страницы и леммы остаются в базе и в индексе, поиск работает во время обхода
+                site = foundSite;
+                site.setStatus(Status.INDEXING);
+                site.setDateTime(LocalDateTime.now());
+                site.setLastError(null);
+                knownPages = bulkIndexRepository.findPageVersions(site.getId());
+            } else {
+                if (foundSite != null) {
+                    invertedIndex.removeSite(foundSite.getId());
+                    indexingPipeline.removeSite(foundSite.getId());
                     siteRepository.deleteByUrl(foundSiteUrl);
                 }
-                long start = System.currentTimeMillis();
-
                 site = insertSiteValues(value);
+            }
 
-                siteRepository.save(site);
-
-                invokeRootTask(site.getUrl());
+            siteRepository.save(site);
 
-                if (!WebCrawler.isIndexing()) {
-                    throw new IndexingStoppedException();
-                }
+            boolean completed = crawlScheduler.crawl(site, knownPages);
 
-                site.setStatus(Status.INDEXED);
-                siteRepository.save(site);
+            indexingPipeline.flush(site.getId());
 
-                long end = System.currentTimeMillis();
-                long result = end - start;
-                log.error("hours: " + result / 1000 / 60 / 60);
-                log.error("minutes: " + result / 1000 / 60);
-                log.error("seconds: " + result / 1000);
+            if (!completed) {
+                throw new IndexingStoppedException();
             }
+
+            site.setStatus(Status.INDEXED);
+            site.setDateTime(LocalDateTime.now());
+            statusTimeWriter.forget(site.getId());
+            siteRepository.save(site);
+
+            long result = System.currentTimeMillis() - start;
+            meterRegistry.timer("indexing.site", "site", site.getUrl(), "mode", incremental ? "incremental" : "full")
+                    .record(result, TimeUnit.MILLISECONDS);
+            log.info(site.getUrl() + " indexed in " + result / 1000 / 60 + " min " + result / 1000 % 60 + " s");
         } catch (IndexingStoppedException e) {
             log.error("error", e);
             if (site != null) {
                 setError(site);
-                forkJoinPool.shutdown();
             }
         }catch (Exception e){
             log.error("error", e);
-        } finally {
-            if (forkJoinPool != null) {
-                forkJoinPool.shutdown();
-            }
         }
     }
 
     private void stop(){
         try {
-            forkJoinPool.shutdownNow();
             WebCrawler.setIndexing(false);
+            crawlScheduler.stopAll();
             editAllSites();
         } catch (Exception e) {
             log.error("error", e);
         }
     }
 
+    //страница записывается через IndexingPipeline: уже сохранённая обновляется
+    //по разнице лемм в той же пакетной транзакции, что и новые страницы
     private void indexSinglePage(String entryUrl){
-        Document document = null;
+        Connection.Response response = null;
+        String host = getFullDomainName(entryUrl);
         try {
-            Thread.sleep(125);
-            document = Jsoup.connect(entryUrl)
+            rateLimiter.acquire(host);
+            long start = System.currentTimeMillis();
+            response = Jsoup.connect(entryUrl)
                     .userAgent(crawlerConfig.getUserAgent())
                     .referrer(crawlerConfig.getReferrer())
                     .timeout(10000)
-                    .get();
+                    .ignoreHttpErrors(true)
+                    .execute();
+            rateLimiter.onResponse(host, response.statusCode(), System.currentTimeMillis() - start, response.header("Retry-After"));
         } catch (InterruptedException | IOException e) {
             log.error("error", e);
         }
 
         try {
-            if(document == null){
+            if(response == null){
                 return;
             }
 
-            if(hasErrorStatus(document)){
-                return;
-            }
-
-            int statusCode = document.connection().response().statusCode();
+            int statusCode = response.statusCode();
             String domainName = getFullDomainName(entryUrl);
             Site site = siteRepository.findByUrl(domainName);
             String relUrl = getRelativeUrl(entryUrl);
-            String content = document.outerHtml();
-            String bodyText = document.body().text();
-
-            Page newPage = initNewPage(statusCode, site, content, relUrl);
 
-            Page foundPage = pageRepository.findByPathAndSite(relUrl, site);
-
-            if (foundPage != null) {
-                updateExistingPage(foundPage, statusCode, site, content, relUrl);
-                newPage = foundPage;
-            }else{
-                pageRepository.save(newPage);
+            if(hasErrorStatus(statusCode)){
+                //страница снята с публикации - убираем её из индекса
+                if (statusCode == 404 || statusCode == 410) {
+                    Integer pageId = bulkIndexRepository.findPageIds(site.getId(), List.of(relUrl)).get(relUrl);
+                    if (pageId != null) {
+                        indexingPipeline.submit(ParsedPage.removed(site, relUrl, statusCode, pageId));
+                    }
+                }
+                return;
             }
 
-            initNewLemmaAndIndex(site, newPage, bodyText);
+            Document document = response.parse();
+            String content = document.outerHtml();
+            String bodyText = document.body().text();
+            PageText pageText = lemmaFinder.analyze(document.title(), bodyText);
 
-            site.setDateTime(LocalDateTime.now());
-            siteRepository.save(site);
+            indexingPipeline.submit(new ParsedPage(site, relUrl, statusCode, content, pageText,
+                    response.header("ETag"), response.header("Last-Modified"), null));
+
+            statusTimeWriter.touch(site.getId());
         } catch (Exception e) {
             log.error("error", e);
         }
     }
 
-    private Page initNewPage(int statusCode, Site site, String content, String relUrl) {
-        Page newPage = new Page();
-        newPage.setCode(statusCode);
-        newPage.setSite(site);
-        newPage.setContent(content);
-        newPage.setPath(relUrl);
-        return newPage;
-    }
-
-    private void initNewLemmaAndIndex(Site site, Page newPage, String content) throws IOException {
-        LemmaFinder lemmaFinder = new LemmaFinder();
-        Map<String, Integer> lemmaList = lemmaFinder.getLemmasAndFrequency(content);
-        for (Map.Entry<String, Integer> value :
-                lemmaList.entrySet()) {
-            String lemmaWord = value.getKey();
-            int rank = value.getValue();
-
-            Lemma newLemma = new Lemma();
-            newLemma.setSite(site);
-            newLemma.setLemma(lemmaWord);
-            newLemma.setFrequency(1);
-
-            Index newIndex = new Index();
-            newIndex.setPage(newPage);
-            newIndex.setLemma(newLemma);
-            newIndex.setRank(rank);
-
-            List<Lemma> foundLemmaList = lemmaRepository.findByLemmaAndSite(lemmaWord, site);
-
-            if (!foundLemmaList.isEmpty()) {
-                updateExistingLemmas(foundLemmaList, newIndex);
-            } else {
-                lemmaRepository.save(newLemma);
-                indexRepository.save(newIndex);
-            }
-        }
-    }
-
-    private boolean hasErrorStatus(Document document) {
-        int statusCode = document.connection().response().statusCode();
+    private boolean hasErrorStatus(int statusCode) {
         boolean hasClientError = String.valueOf(statusCode).charAt(0) == '4';
         boolean hasServerError = String.valueOf(statusCode).charAt(0) == '5';
 
@@ -273,17 +378,12 @@ public class IndexingServiceImpl implements IndexingService {
 
     private void setError(Site site) {
         site.setStatus(Status.FAILED);
+        site.setDateTime(LocalDateTime.now());
         site.setLastError("Indexing is stopped by user");
+        statusTimeWriter.forget(site.getId());
         siteRepository.save(site);
     }
 
-    private void invokeRootTask(String siteUrl) {
-        WebCrawler rootTask = new WebCrawler(siteUrl, pageRepository, siteRepository, lemmaRepository, indexRepository);
-        WebCrawler.setUserAgent(crawlerConfig.getUserAgent());
-        WebCrawler.setReferrer(crawlerConfig.getReferrer());
-        forkJoinPool.invoke(rootTask);
-    }
-
     private Site insertSiteValues(Site value) {
         Status status = Status.INDEXING;
         LocalDateTime time = LocalDateTime.now();
@@ -304,29 +404,10 @@ public class IndexingServiceImpl implements IndexingService {
         site.setUrl(site.getUrl());
         site.setName(site.getName());
         site.setLastError("Indexing is stopped by user");
+        statusTimeWriter.forget(site.getId());
         siteRepository.save(site);
     }
 
-    private void updateExistingLemmas(List<Lemma> lemmaList, Index newIndex) {
-        for (Lemma foundLemma : lemmaList) {
-            int foundLemmaFrequency = foundLemma.getFrequency();
-            foundLemma.setFrequency(foundLemmaFrequency + 1);
-
-            newIndex.setLemma(foundLemma);
-
-            lemmaRepository.save(foundLemma);
-            indexRepository.save(newIndex);
-        }
-    }
-
-    private void updateExistingPage(Page foundPage, int statusCode, Site site, String content, String relUrl) {
-        foundPage.setCode(statusCode);
-        foundPage.setSite(site);
-        foundPage.setContent(content);
-        foundPage.setPath(relUrl);
-        pageRepository.save(foundPage);
-    }
-
     private String getRelativeUrl(String url) {
         if (!url.startsWith("/")) {
             String domainName = getFullDomainName(url);
@@ -336,37 +417,30 @@ public class IndexingServiceImpl implements IndexingService {
     }
 
     private String getFullDomainName(String url) {
-        Pattern fullDomainName = Pattern.compile("https://(www\\.)?\\w+\\.[a-z]+/");
+        Pattern fullDomainName = Pattern.compile("^https?://[^/]+/");
         Matcher matcher = fullDomainName.matcher(url);
 
         return matcher.find() ? matcher.group() : url;
     }
 
-    private String changeProtocol(String entryUrl) {
-        String result = entryUrl.substring(4);
-        if(result.startsWith("://www")) {
-            result = "https://" + removeSubdomain(result);
-        }else{
-            result = "https" + result;
+    //ссылка на страницу сайта из конфигурации с его схемой и доменом: http/https
+    //и www. в переданной ссылке не учитываются. null - страница не относится ни к одному сайту
+    private String toSiteUrl(String entryUrl) {
+        String domainName = getFullDomainName(entryUrl);
+        String host = removeScheme(domainName);
+        if (sites.getSites() == null) {
+            return null;
         }
-        return result;
-    }
-
-    private String removeSubdomain(String entryUrl) {
-        if(entryUrl.startsWith("://www")) {
-            return entryUrl.substring(7);
-        }else{
-            return "https://" + entryUrl.substring(12);
+        for (Site site : sites.getSites()) {
+            if (removeScheme(site.getUrl()).equals(host)) {
+                return site.getUrl() + entryUrl.substring(domainName.length());
+            }
         }
+        return null;
     }
 
-    private String checkUrl(String entryUrl) {
-        if(entryUrl.startsWith("http:")){
-            return changeProtocol(entryUrl);
-        }else if(entryUrl.startsWith("https://www.")){
-            return removeSubdomain(entryUrl);
-        }else{
-            return entryUrl;
-        }
+    private String removeScheme(String url) {
+        String result = url.replaceFirst("^https?://", "");
+        return result.startsWith("www.") ? result.substring(4) : result;
     }
 }
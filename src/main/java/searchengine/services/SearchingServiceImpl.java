@@ -1,6 +1,9 @@
 package searchengine.services;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.log4j.Log4j2;
+import org.jsoup.Jsoup;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
@@ -8,36 +11,64 @@ import searchengine.dto.searching.SearchErrorResponse;
 import searchengine.dto.searching.SearchResponse;
 import searchengine.dto.searching.SearchSuccessResponse;
 import searchengine.dto.searching.SiteData;
-import searchengine.model.Index;
+import searchengine.index.InvertedIndex;
+import searchengine.index.Postings;
+import searchengine.index.PostingsIntersection;
+import searchengine.index.RelevanceScorer;
+import searchengine.index.SearchResultCache;
+import searchengine.index.SiteStatistics;
+import searchengine.index.TopKCollector;
 import searchengine.model.Lemma;
 import searchengine.model.Page;
 import searchengine.model.Site;
-import searchengine.repositories.IndexRepository;
 import searchengine.repositories.LemmaRepository;
+import searchengine.repositories.PageContentRepository;
 import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
+import searchengine.utils.ContentCompressor;
 import searchengine.utils.LemmaFinder;
+import searchengine.utils.PageText;
 
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 @Service
 @Log4j2
 public class SearchingServiceImpl implements SearchingService{
+    private static final int SNIPPET_LENGTH = 200;
+    //сколько страниц ранжировать про запас, чтобы следующие страницы выдачи брались из кэша
+    private static final int MIN_RANKED_PAGES = 100;
+
     private final LemmaFinder lemmaFinder;
     private final LemmaRepository lemmaRepository;
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
-    private final IndexRepository indexRepository;
-
-    public SearchingServiceImpl(LemmaFinder lemmaFinder, LemmaRepository lemmaRepository, SiteRepository siteRepository, PageRepository pageRepository, IndexRepository indexRepository) {
+    private final PageContentRepository pageContentRepository;
+    private final InvertedIndex invertedIndex;
+    private final SearchResultCache searchResultCache;
+    private final RelevanceScorer relevanceScorer;
+    private final MeterRegistry meterRegistry;
+    //этапы поиска: леммы запроса из базы, ранжирование по индексу, загрузка страниц, сниппеты
+    private final Timer lemmasTimer;
+    private final Timer scoringTimer;
+    private final Timer pagesTimer;
+    private final Timer snippetsTimer;
+
+    public SearchingServiceImpl(LemmaFinder lemmaFinder, LemmaRepository lemmaRepository, SiteRepository siteRepository, PageRepository pageRepository, PageContentRepository pageContentRepository, InvertedIndex invertedIndex, SearchResultCache searchResultCache, RelevanceScorer relevanceScorer, MeterRegistry meterRegistry) {
         this.lemmaFinder = lemmaFinder;
         this.lemmaRepository = lemmaRepository;
         this.siteRepository = siteRepository;
         this.pageRepository = pageRepository;
-        this.indexRepository = indexRepository;
+        this.pageContentRepository = pageContentRepository;
+        this.invertedIndex = invertedIndex;
+        this.searchResultCache = searchResultCache;
+        this.relevanceScorer = relevanceScorer;
+        this.meterRegistry = meterRegistry;
+        this.lemmasTimer = meterRegistry.timer("search.phase", "phase", "lemmas");
+        this.scoringTimer = meterRegistry.timer("search.phase", "phase", "scoring");
+        this.pagesTimer = meterRegistry.timer("search.phase", "phase", "pages");
+        this.snippetsTimer = meterRegistry.timer("search.phase", "phase", "snippets");
     }
 
     @Override
@@ -47,81 +78,94 @@ public class SearchingServiceImpl implements SearchingService{
             response = new SearchErrorResponse(false, "Entered value is empty");
             return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
         }else{
-            List<SiteData> list = startSearching(query, site, offset, limit);
-
-            response = new SearchSuccessResponse(true, list.size(), list);
+            response = startSearching(query, site, Math.max(0, offset), Math.max(0, limit));
 
             return new ResponseEntity<>(response, HttpStatus.OK);
         }
     }
 
-    private List<SiteData> startSearching(String query, String siteDomain, int offset, int limit) {
-        List<SiteData> result = new ArrayList<>();
-        List<Lemma> lemmaList = new ArrayList<>();
-
+    private SearchSuccessResponse startSearching(String query, String siteDomain, int offset, int limit) {
+        Timer.Sample sample = Timer.start();
+        String cache = "hit";
         try {
             List<String> lemmasFromQuery = lemmaFinder.getLemmas(query.toLowerCase().trim());
-
-            for (String lemmaFromQuery : lemmasFromQuery) {
-                if (siteDomain == null || siteDomain.isBlank()) {
-                    removeMostFrequentLemmas(lemmaFromQuery, lemmaList, null);
-                }else {
-                    Site site = siteRepository.findByUrl(siteDomain);
-                    removeMostFrequentLemmas(lemmaFromQuery, lemmaList, site);
-                }
-            }
-
-            if(lemmaList.isEmpty()){
-                return new ArrayList<>();
+            int requiredPages = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+
+            String key = SearchResultCache.getKey(lemmasFromQuery, siteDomain);
+            SearchResultCache.RankedResult ranked = searchResultCache.get(key, requiredPages);
+            if (ranked == null) {
+                cache = "miss";
+                ranked = rank(lemmasFromQuery, siteDomain, Math.max(requiredPages, MIN_RANKED_PAGES));
+                searchResultCache.put(key, ranked);
             }
 
-            sortByFrequencyAsc(lemmaList);
-
-            List<String> lemmas = getStringLemmas(lemmaList);
-
-            List<Page> pageListByFirstLemma = addPagesByFirstLemma(lemmaList);
-            
-            removeNoLemmaPages(lemmas, pageListByFirstLemma);
-
-            if(pageListByFirstLemma.isEmpty()) {
-                return new ArrayList<>();
+            List<TopKCollector.ScoredPage> top = ranked.getPages();
+            if(top.size() <= offset) {
+                return new SearchSuccessResponse(true, ranked.getTotalHits(), new ArrayList<>());
             }
 
-            Map<Page, Double> pagesWithRelevance = getPagesWithRelevance(pageListByFirstLemma, lemmaList);
-
-            result = initSiteData(pagesWithRelevance, lemmasFromQuery);
-
-            result = filterBy(offset, limit, result);
+            double maxScore = top.get(0).getScore();
+            List<SiteData> result = initSiteData(top.subList(offset, Math.min(top.size(), requiredPages)), maxScore, lemmasFromQuery);
 
+            return new SearchSuccessResponse(true, ranked.getTotalHits(), result);
         }catch (Exception e){
             log.error("error", e);
+        }finally {
+            sample.stop(meterRegistry.timer("search", "cache", cache));
         }
 
-        return result;
+        return new SearchSuccessResponse(true, 0, new ArrayList<>());
     }
 
-    private List<SiteData> filterBy(int offset, int limit, List<SiteData> result) {
-        return result.stream().skip(offset).limit(limit).collect(Collectors.toList());
+    //k лучших страниц запроса и общее число совпадений
+    private SearchResultCache.RankedResult rank(List<String> lemmasFromQuery, String siteDomain, int k) {
+        //поколение читается до ранжирования: если индекс изменится по ходу, запись сразу устареет
+        long generation = invertedIndex.getGeneration();
+        List<Lemma> lemmaList = lemmasTimer.record(() -> planQuery(lemmasFromQuery, siteDomain));
+
+        if(lemmaList.isEmpty()){
+            return new SearchResultCache.RankedResult(generation, new ArrayList<>(), 0);
+        }
+
+        List<String> lemmas = getStringLemmas(lemmaList);
+
+        TopKCollector collector = new TopKCollector(k);
+        scoringTimer.record(() -> findPagesWithAllLemmas(lemmas, lemmaList, collector));
+
+        return new SearchResultCache.RankedResult(generation, collector.getTop(), collector.getTotalHits());
     }
 
-    private List<SiteData> initSiteData(Map<Page, Double> pagesWithRelevance, List<String> lemmasFromQuery) {
+    //страницы и сниппеты загружаются только для возвращаемой части выдачи
+    private List<SiteData> initSiteData(List<TopKCollector.ScoredPage> scoredPages, double maxScore, List<String> lemmasFromQuery) {
         List<SiteData> result = new ArrayList<>();
+        Set<String> queryLemmas = new HashSet<>(lemmasFromQuery);
 
-        List<Map.Entry<Page, Double>> sortedPagesByRelevanceDesc = getSortedPagesByRelevance(pagesWithRelevance);
+        List<Integer> pageIds = scoredPages.stream().map(TopKCollector.ScoredPage::getPageId).toList();
+        Map<Integer, Page> pagesById = new HashMap<>();
+        pagesTimer.record(() -> {
+            for (Page page : pageRepository.findAllById(pageIds)) {
+                pagesById.put(page.getId(), page);
+            }
+        });
 
-        for (Map.Entry<Page, Double> entry : sortedPagesByRelevanceDesc) {
-            Page page = entry.getKey();
+        Timer.Sample snippetSample = Timer.start();
+
+        for (TopKCollector.ScoredPage scoredPage : scoredPages) {
+            Page page = pagesById.get(scoredPage.getPageId());
+            if (page == null) {
+                continue;
+            }
 
             Site pageSite = page.getSite();
-            String content = page.getContent();
+            PageText pageText = getPageText(page);
             String siteUrl = pageSite.getUrl();
 
             String domainName = siteUrl.substring(0, siteUrl.length() - 1);
             String siteName = pageSite.getName();
             String path = page.getPath();
-            String title = getTitle(content);
-            String snippet = getSnippet(content, lemmasFromQuery);
-            double relRelevance = entry.getValue();
+            String title = pageText.getTitle();
+            String snippet = getSnippet(pageText, queryLemmas);
+            double relRelevance = maxScore > 0 ? scoredPage.getScore() / maxScore : 0;
 
             SiteData siteData = new SiteData();
             siteData.setSite(domainName);
@@ -133,37 +177,43 @@ public class SearchingServiceImpl implements SearchingService{
 
             result.add(siteData);
         }
+        snippetSample.stop(snippetsTimer);
         return result;
     }
 
-    private void removeNoLemmaPages(List<String> lemmas, List<Page> pageListByFirstLemma) {
-        String firstStrLemma = lemmas.get(0);
-        boolean isFirstLemma;
-        boolean isAdded = false;
+    //страницы, содержащие все леммы запроса, с оценкой RelevanceScorer.
+    //Сайты обходятся по убыванию верхней оценки score: если она ниже порога
+    //заполненной кучи, совпадения сайта только считаются.
+    //Не private: этот метод, getSnippet и getTitle вызывают бенчмарки из src/jmh
+    void findPagesWithAllLemmas(List<String> lemmas, List<Lemma> lemmaList, TopKCollector collector) {
+        Map<Integer, Map<String, Lemma>> lemmasBySite = new HashMap<>();
+        for (Lemma lemma : lemmaList) {
+            lemmasBySite.computeIfAbsent(lemma.getSite().getId(), id -> new HashMap<>())
+                    .put(lemma.getLemma(), lemma);
+        }
 
-        for (int i = 0; i < pageListByFirstLemma.size(); i++) {
-            Page foundPage = pageListByFirstLemma.get(i);
+        List<SiteQuery> siteQueries = new ArrayList<>();
+        for (Map.Entry<Integer, Map<String, Lemma>> siteLemmas : lemmasBySite.entrySet()) {
+            if (!siteLemmas.getValue().keySet().containsAll(lemmas)) {
+                continue;
+            }
+            List<Postings> postings = new ArrayList<>();
             for (String lemma : lemmas) {
-                List<String> list = lemmaFinder.getLemmas(lemma);
-                isFirstLemma = list.contains(firstStrLemma);
-                if (isFirstLemma) {
-                    continue;
-                }
-                isAdded = false;
-                List<Lemma> foundLemmas = lemmaRepository.findByLemma(lemma);
-                for (Lemma foundLemma : foundLemmas) {
-                    List<Index> indexList = indexRepository.findByLemmaAndPage(foundLemma, foundPage);
-                    if(indexList.isEmpty()) {
-                        continue;
-                    }
-                    isAdded = true;
-                }
-                if(!isAdded){
-                    pageListByFirstLemma.remove(foundPage);
-                    i = -1;
-                    break;
-                }
+                postings.add(invertedIndex.getPostings(siteLemmas.getValue().get(lemma)));
             }
+            SiteStatistics statistics = invertedIndex.getStatistics(siteLemmas.getKey());
+            siteQueries.add(new SiteQuery(postings, relevanceScorer.prepare(statistics, postings)));
+        }
+        siteQueries.sort(Comparator.comparingDouble((SiteQuery siteQuery) -> siteQuery.scorer.upperBound()).reversed());
+
+        for (SiteQuery siteQuery : siteQueries) {
+            if (collector.isFull() && siteQuery.scorer.upperBound() < collector.getThreshold()) {
+                PostingsIntersection.intersect(siteQuery.postings, (pageId, ranks) -> collector.count());
+                continue;
+            }
+            RelevanceScorer.QueryScorer scorer = siteQuery.scorer;
+            PostingsIntersection.intersect(siteQuery.postings,
+                    (pageId, ranks) -> collector.offer(pageId, scorer.score(pageId, ranks)));
         }
     }
 
@@ -183,69 +233,117 @@ public class SearchingServiceImpl implements SearchingService{
         return lemmas;
     }
 
-    private String getSnippet(String content, List<String> queryLemmas) {
-        String[] words = content
-                .replaceAll("<[^>]*>", " ")
-                .trim()
-                .replaceAll("[^ЁА-Яёа-яA-Za-z]+", " ")
-                .trim()
-                .split(" +");
-        int start = 0;
-        int end = 0;
-
-        for (int i = 0; i < words.length; i++) {
-            String str = words[i];
-
-            List<String> arr = null;
-
-            if(str.isBlank()) {
-                continue;
+    //окно текста длиной до SNIPPET_LENGTH, в котором встречается больше всего
+    //разных лемм запроса; слова запроса выделяются тегом <b>
+    String getSnippet(PageText pageText, Collection<String> queryLemmas) {
+        String text = pageText.getText();
+        int[] starts = pageText.getTokenStarts();
+        int[] ends = pageText.getTokenEnds();
+        int[] tokenLemmas = pageText.getTokenLemmas();
+        String[] lemmas = pageText.getLemmas();
+
+        boolean[] isQueryLemma = new boolean[lemmas.length];
+        for (int i = 0; i < lemmas.length; i++) {
+            isQueryLemma[i] = queryLemmas.contains(lemmas[i]);
+        }
+        int[] matches = new int[pageText.getTokenCount()];
+        int matchCount = 0;
+        for (int i = 0; i < pageText.getTokenCount(); i++) {
+            if (isQueryLemma[tokenLemmas[i]]) {
+                matches[matchCount++] = i;
             }
+        }
 
-            arr = lemmaFinder.getLemmas(str);
-
-            if(arr == null || arr.isEmpty()){
-                continue;
+        int[] counts = new int[lemmas.length];
+        int distinct = 0;
+        int left = 0;
+        int bestFirst = -1;
+        int bestLast = -1;
+        int bestDistinct = 0;
+        for (int right = 0; right < matchCount; right++) {
+            if (counts[tokenLemmas[matches[right]]]++ == 0) {
+                distinct++;
             }
-
-            for (String word : arr) {
-                if (!word.isBlank() && queryLemmas.contains(word.toLowerCase())) {
-                    words[i] = words[i].replace(words[i], "<b>" + words[i] + "</b>");
-
-                    if (i > 13) {
-                        start = i - 14;
-
-                        if (i + 15 < words.length) {
-                            end = i + 15;
-                        } else {
-                            end = words.length - 1;
-                        }
-                    } else {
-                        if (i > 6) {
-                            end = i + 15;
-                        } else {
-                            end = i + i + 15;
-                        }
-                    }
-                    break;
+            while (ends[matches[right]] - starts[matches[left]] > SNIPPET_LENGTH) {
+                if (--counts[tokenLemmas[matches[left]]] == 0) {
+                    distinct--;
                 }
+                left++;
+            }
+            if (distinct > bestDistinct || (distinct == bestDistinct && right - left > bestLast - bestFirst)) {
+                bestDistinct = distinct;
+                bestFirst = left;
+                bestLast = right;
             }
         }
 
-        StringBuilder snippet = new StringBuilder();
+        int from = 0;
+        int to = Math.min(text.length(), SNIPPET_LENGTH);
+        if (bestFirst >= 0) {
+            int windowStart = starts[matches[bestFirst]];
+            int windowEnd = ends[matches[bestLast]];
+            int margin = (SNIPPET_LENGTH - (windowEnd - windowStart)) / 2;
+            from = Math.max(0, windowStart - margin);
+            to = Math.min(text.length(), windowEnd + margin);
+            //не обрезаем слова по краям сниппета
+            int space = text.indexOf(' ', from);
+            if (from > 0 && space >= 0 && space < windowStart) {
+                from = space + 1;
+            }
+            space = text.lastIndexOf(' ', to);
+            if (to < text.length() && space > windowEnd) {
+                to = space;
+            }
+        }
 
-        for (int i = start; i < end; i++) {
+        StringBuilder snippet = new StringBuilder();
+        if (from > 0) {
+            snippet.append("...");
+        }
+        int position = from;
+        for (int i = 0; i < matchCount; i++) {
+            int start = starts[matches[i]];
+            int end = ends[matches[i]];
+            if (start < position || end > to) {
+                continue;
+            }
+            appendEscaped(snippet, text, position, start);
+            snippet.append("<b>");
+            appendEscaped(snippet, text, start, end);
+            snippet.append("</b>");
+            position = end;
+        }
+        appendEscaped(snippet, text, position, to);
+        if (to < text.length()) {
+            snippet.append("...");
+        }
+        return snippet.toString();
+    }
 
-            if(queryLemmas.contains(words[i])) {
-                words[i] = words[i].replace(words[i], "<b>" + words[i] + "</b>");
+    private void appendEscaped(StringBuilder builder, String text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> builder.append("&lt;");
+                case '>' -> builder.append("&gt;");
+                case '&' -> builder.append("&amp;");
+                default -> builder.append(c);
             }
+        }
+    }
 
-            snippet.append(words[i]).append(" ");
+    //страницы, сохранённые без разобранного текста, разбираются при показе
+    private PageText getPageText(Page page) {
+        if (page.getTokens() != null && page.getText() != null) {
+            return PageText.decode(page.getTitle(), page.getText(), page.getTokens());
         }
-        return snippet.toString();
+        String content = pageContentRepository.findById(page.getId())
+                .map(pageContent -> ContentCompressor.decompress(pageContent.getContent()))
+                .orElse("");
+        return lemmaFinder.analyze(getTitle(content), Jsoup.parse(content).text());
     }
 
-    private String getTitle(String content){
+    String getTitle(String content){
         Pattern pattern = Pattern.compile("<title>(.+?)</title>");
         Matcher matcher = pattern.matcher(content);
 
@@ -255,112 +353,56 @@ public class SearchingServiceImpl implements SearchingService{
         return "";
     }
 
-    private List<Map.Entry<Page, Double>> getSortedPagesByRelevance(Map<Page, Double> pagesWithRelevance) {
-        List<Map.Entry<Page, Double>> result = new ArrayList<>(pagesWithRelevance.entrySet());
-
-        result.sort(Map.Entry.comparingByValue());
-
-        Collections.reverse(result);
-
-        return result;
-    }
-
-    private Map<Page, Double> getPagesWithRelevance(List<Page> pageList, List<Lemma> lemmaList) {
-        int maxRelevance = Integer.MIN_VALUE;
-
-        Map<Page, Double> result = new HashMap<>();
-
-        for (Page page :
-                pageList) {
-            int absRelevance = 0;
-
-            for (Lemma lemma :
-                    lemmaList) {
-                List<Index> foundIndexList = indexRepository.findByLemmaAndPage(lemma, page);
-
-                if (foundIndexList.isEmpty()) {
-                    continue;
-                }
+    //план запроса: строки lemma всех сайтов для лемм запроса загружаются одним
+    //запросом, по сумме frequency отбрасываются слишком частые леммы, остальные
+    //сортируются от редких к частым. Число страниц берётся из обратного индекса в памяти
+    private List<Lemma> planQuery(List<String> lemmasFromQuery, String siteDomain) {
+        if (lemmasFromQuery.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-                for (Index foundIndex : foundIndexList) {
-                    absRelevance += foundIndex.getRank();
-                }
+        Integer siteId = null;
+        if (siteDomain != null && !siteDomain.isBlank()) {
+            Site site = siteRepository.findByUrl(siteDomain);
+            if (site == null) {
+                return new ArrayList<>();
             }
+            siteId = site.getId();
+        }
 
-            double relRelevance = (double) absRelevance / maxRelevance;
-            result.put(page, relRelevance);
+        long pageCount = siteId == null ? invertedIndex.getPageCount() : invertedIndex.getStatistics(siteId).getPageCount();
+        if (pageCount == 0) {
+            return new ArrayList<>();
         }
 
-        return result;
-    }
+        List<Lemma> foundLemmas = new ArrayList<>();
+        Map<String, Long> totalFrequencies = new HashMap<>();
+        for (Lemma lemma : lemmaRepository.findAllByLemmaIn(new HashSet<>(lemmasFromQuery))) {
+            if (siteId != null && lemma.getSite().getId() != siteId) {
+                continue;
+            }
+            foundLemmas.add(lemma);
+            totalFrequencies.merge(lemma.getLemma(), (long) lemma.getFrequency(), Long::sum);
+        }
 
-    private List<Page> addPagesByFirstLemma(List<Lemma> lemmaList) {
-        String strToCheck = "";
-        List<Page> pageList = new ArrayList<>();
-        boolean hasSameLemma = false;
-        for (Lemma foundLemma :
-                lemmaList) {
-            if (strToCheck.equals("")) {
-                strToCheck = foundLemma.getLemma();
-                hasSameLemma = true;
-                List<Index> indexList = indexRepository.findByLemma(foundLemma);
-                if(!indexList.isEmpty()) {
-                    indexList.forEach(index -> pageList.add(index.getPage()));
-                }
-            }else if(strToCheck.equals(foundLemma.getLemma())){
-                List<Index> indexList = indexRepository.findByLemma(foundLemma);
-                if(!indexList.isEmpty()) {
-                    indexList.forEach(index -> pageList.add(index.getPage()));
-                }
-                hasSameLemma = true;
-            }else {
-                List<String> firstLemmaList = lemmaFinder.getLemmas(strToCheck);
-                List<String> secondLemmaList = lemmaFinder.getLemmas(foundLemma.getLemma());
-                for (String lemmaFromFirstList : firstLemmaList) {
-                    for (String lemmaFromSecondList : secondLemmaList) {
-                        if (lemmaFromFirstList.equals(lemmaFromSecondList)) {
-                            List<Index> indexList = indexRepository.findByLemma(foundLemma);
-                            if (!indexList.isEmpty()) {
-                                indexList.forEach(index -> pageList.add(index.getPage()));
-                            }
-                            hasSameLemma = true;
-                            break;
-                        } else {
-                            hasSameLemma = false;
-                        }
-                    }
-                    if (hasSameLemma) {
-                        break;
-                    }
-                }
+        List<Lemma> result = new ArrayList<>();
+        for (Lemma lemma : foundLemmas) {
+            if (totalFrequencies.get(lemma.getLemma()) * 100 / pageCount < 80) {
+                result.add(lemma);
             }
         }
-        return pageList;
+        result.sort(Comparator.comparingLong((Lemma lemma) -> totalFrequencies.get(lemma.getLemma()))
+                .thenComparing(Lemma::getLemma));
+        return result;
     }
 
-    private void removeMostFrequentLemmas(String queryLemma, List<Lemma> newLemmaList, Site site) {
-        int sumLemmaFrequency = lemmaRepository.sumFrequencyWhereLemmaLike(queryLemma);
-        long sumPageAmount = pageRepository.count();
+    private static class SiteQuery {
+        private final List<Postings> postings;
+        private final RelevanceScorer.QueryScorer scorer;
 
-        List<Lemma> lemmaList = null;
-        if (site == null) {
-            lemmaList = lemmaRepository.findByLemma(queryLemma);
-        }else{
-            lemmaList = lemmaRepository.findByLemmaAndSite(queryLemma, site);
+        private SiteQuery(List<Postings> postings, RelevanceScorer.QueryScorer scorer) {
+            this.postings = postings;
+            this.scorer = scorer;
         }
-        if (sumLemmaFrequency * 100L / sumPageAmount < 80) {
-            newLemmaList.addAll(lemmaList);
-        }
-    }
-
-    private void sortByFrequencyAsc(List<Lemma> lemmaList) {
-        lemmaList.sort(new Comparator<Lemma>() {
-            @Override
-            public int compare(Lemma o1, Lemma o2) {
-                int firstSum = lemmaRepository.sumFrequencyWhereLemmaLike(o1.getLemma());
-                int secondSum = lemmaRepository.sumFrequencyWhereLemmaLike(o2.getLemma());
-                return firstSum - secondSum;
-            }
-        });
     }
 }
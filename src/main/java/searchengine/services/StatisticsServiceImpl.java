@@ -7,9 +7,9 @@ import searchengine.dto.statistics.StatisticsData;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.dto.statistics.TotalStatistics;
 import searchengine.model.Site;
-import searchengine.repositories.LemmaRepository;
-import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
+import searchengine.utils.CrawlScheduler;
+import searchengine.utils.SiteCounters;
 import searchengine.utils.WebCrawler;
 
 import java.time.ZoneId;
@@ -20,33 +20,36 @@ import java.util.List;
 @Log4j2
 public class StatisticsServiceImpl implements StatisticsService {
     private final SiteRepository siteRepository;
-    private final LemmaRepository lemmaRepository;
-    private final PageRepository pageRepository;
+    private final SiteCounters siteCounters;
+    private final CrawlScheduler crawlScheduler;
 
-    public StatisticsServiceImpl(SiteRepository siteRepository, LemmaRepository lemmaRepository, PageRepository pageRepository) {
+    public StatisticsServiceImpl(SiteRepository siteRepository, SiteCounters siteCounters, CrawlScheduler crawlScheduler) {
         this.siteRepository = siteRepository;
-        this.lemmaRepository = lemmaRepository;
-        this.pageRepository = pageRepository;
+        this.siteCounters = siteCounters;
+        this.crawlScheduler = crawlScheduler;
     }
 
     @Override
     public StatisticsResponse getStatistics() {
         StatisticsResponse response = null;
         try {
+            //один запрос к таблице Site, размеры сайтов берутся из счётчиков в памяти
+            List<Site> sitesList = siteRepository.findAll();
             TotalStatistics total = new TotalStatistics();
-            total.setSites((int)siteRepository.count());
+            total.setSites(sitesList.size());
             total.setIndexing(WebCrawler.isIndexing());
 
             List<DetailedStatisticsItem> detailed = new ArrayList<>();
-            List<Site> sitesList = siteRepository.findAll();
             for (Site site : sitesList) {
                 String url = site.getUrl();
                 String name = site.getName();
                 String status = site.getStatus().name();
                 long time = site.getDateTime().atZone(ZoneId.of("Europe/Paris")).toInstant().toEpochMilli();
                 String error = site.getLastError();
-                int pages = pageRepository.countBySite(site);
-                int lemmas = lemmaRepository.countBySite(site);
+                SiteCounters.Counters counters = siteCounters.get(site.getId());
+                int pages = counters.getPages().get();
+                int lemmas = counters.getLemmas().get();
+                int indexes = counters.getIndexes().get();
 
                 DetailedStatisticsItem item = new DetailedStatisticsItem();
                 item.setUrl(url);
@@ -56,9 +59,17 @@ public class StatisticsServiceImpl implements StatisticsService {
                 item.setError(error);
                 item.setPages(pages);
                 item.setLemmas(lemmas);
+                item.setIndexes(indexes);
+
+                WebCrawler webCrawler = crawlScheduler.getCrawler(url);
+                if (webCrawler != null) {
+                    item.setCrawledPages(webCrawler.getCrawledPages());
+                    item.setQueuedPages(webCrawler.getQueuedPages());
+                }
 
                 total.setPages(total.getPages() + pages);
                 total.setLemmas(total.getLemmas() + lemmas);
+                total.setIndexes(total.getIndexes() + indexes);
 
                 detailed.add(item);
             }
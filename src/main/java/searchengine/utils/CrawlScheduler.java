@@ -0,0 +1,93 @@
+package searchengine.utils;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerConfig;
+import searchengine.model.Site;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//общие пулы загрузки и разбора для всех сайтов, которые обходятся одновременно.
+//Каждый сайт получает равную долю потоков загрузки; доля пересчитывается,
+//когда обход какого-либо сайта завершается
+@Component
+@Log4j2
+public class CrawlScheduler {
+    private final CrawlerConfig crawlerConfig;
+    private final StatusTimeWriter statusTimeWriter;
+    private final IndexingPipeline indexingPipeline;
+    private final HostRateLimiter rateLimiter;
+    private final LemmaFinder lemmaFinder;
+    private final Map<String, WebCrawler> crawlers = new ConcurrentHashMap<>();
+    private ExecutorService fetchPool;
+    private ExecutorService parsePool;
+
+    public CrawlScheduler(CrawlerConfig crawlerConfig, StatusTimeWriter statusTimeWriter, IndexingPipeline indexingPipeline, HostRateLimiter rateLimiter, LemmaFinder lemmaFinder) {
+        this.crawlerConfig = crawlerConfig;
+        this.statusTimeWriter = statusTimeWriter;
+        this.indexingPipeline = indexingPipeline;
+        this.rateLimiter = rateLimiter;
+        this.lemmaFinder = lemmaFinder;
+    }
+
+    public synchronized void open() {
+        fetchPool = Executors.newFixedThreadPool(crawlerConfig.getFetchThreads());
+        parsePool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    public synchronized void close() {
+        if (fetchPool != null) {
+            fetchPool.shutdown();
+        }
+        if (parsePool != null) {
+            parsePool.shutdown();
+        }
+    }
+
+    //обходит сайт и возвращает false, если обход был остановлен;
+    //knownPages - сохранённые страницы сайта при повторном обходе
+    public boolean crawl(Site site, Map<String, PageVersion> knownPages) throws InterruptedException {
+        WebCrawler webCrawler = new WebCrawler(site, statusTimeWriter, indexingPipeline, crawlerConfig, rateLimiter, lemmaFinder, knownPages);
+        crawlers.put(site.getUrl(), webCrawler);
+        try {
+            return webCrawler.crawl(fetchPool, parsePool, this::getFetchShare);
+        } finally {
+            crawlers.remove(site.getUrl());
+        }
+    }
+
+    public boolean stop(String siteUrl) {
+        WebCrawler webCrawler = crawlers.get(siteUrl);
+        if (webCrawler == null) {
+            return false;
+        }
+        webCrawler.stop();
+        return true;
+    }
+
+    public synchronized void stopAll() {
+        crawlers.values().forEach(WebCrawler::stop);
+        if (fetchPool != null) {
+            fetchPool.shutdownNow();
+        }
+        if (parsePool != null) {
+            parsePool.shutdownNow();
+        }
+    }
+
+    public WebCrawler getCrawler(String siteUrl) {
+        return crawlers.get(siteUrl);
+    }
+
+    public Collection<WebCrawler> getCrawlers() {
+        return crawlers.values();
+    }
+
+    private int getFetchShare() {
+        return Math.max(1, crawlerConfig.getFetchThreads() / Math.max(1, crawlers.size()));
+    }
+}
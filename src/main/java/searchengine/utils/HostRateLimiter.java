@@ -0,0 +1,108 @@
+package searchengine.utils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerConfig;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+//ограничение частоты запросов к каждому хосту (token bucket).
+//Частота растёт, пока хост отвечает быстро, и снижается при медленных
+//ответах; на 429/503 запросы к хосту приостанавливаются на Retry-After.
+//Сюда приходят все ответы краулера и /api/indexPage, поэтому здесь же
+//измеряется время загрузки страниц (таймер crawler.fetch)
+@Component
+@Log4j2
+public class HostRateLimiter {
+    private final CrawlerConfig crawlerConfig;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public HostRateLimiter(CrawlerConfig crawlerConfig, MeterRegistry meterRegistry) {
+        this.crawlerConfig = crawlerConfig;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void acquire(String host) throws InterruptedException {
+        long waitNanos = getBucket(host).reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    //statusCode 0 - ответа нет (таймаут, обрыв соединения)
+    public void onResponse(String host, int statusCode, long latencyMillis, String retryAfter) {
+        getBucket(host).adapt(statusCode, latencyMillis, retryAfter);
+        meterRegistry.timer("crawler.fetch", "host", host, "status", statusCode == 0 ? "error" : statusCode / 100 + "xx")
+                .record(latencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public double getRate(String host) {
+        return getBucket(host).rate;
+    }
+
+    private Bucket getBucket(String host) {
+        return buckets.computeIfAbsent(host, h -> {
+            Bucket bucket = new Bucket(crawlerConfig.getRequestsPerSecond());
+            Gauge.builder("crawler.rate", bucket, b -> b.rate).tag("host", h).register(meterRegistry);
+            return bucket;
+        });
+    }
+
+    private long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toNanos(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(), date).toNanos());
+            } catch (Exception ex) {
+                log.warn("Unsupported Retry-After value: " + retryAfter);
+                return 0;
+            }
+        }
+    }
+
+    private class Bucket {
+        private volatile double rate;
+        private long theoreticalArrival = System.nanoTime();
+        private long pausedUntil = System.nanoTime();
+
+        private Bucket(double rate) {
+            this.rate = rate;
+        }
+
+        //резервирует слот для запроса и возвращает, сколько нужно подождать
+        private synchronized long reserve() {
+            long now = System.nanoTime();
+            long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            long tolerance = interval * (Math.max(1, crawlerConfig.getBurst()) - 1);
+            long earliest = Math.max(now, pausedUntil);
+            long arrival = Math.max(theoreticalArrival, earliest);
+            long allowedAt = Math.max(earliest, arrival - tolerance);
+            theoreticalArrival = arrival + interval;
+            return allowedAt - now;
+        }
+
+        private synchronized void adapt(int statusCode, long latencyMillis, String retryAfter) {
+            if (statusCode == 429 || statusCode == 503) {
+                rate = Math.max(crawlerConfig.getMinRequestsPerSecond(), rate / 2);
+                pausedUntil = Math.max(pausedUntil, System.nanoTime() + parseRetryAfter(retryAfter));
+            } else if (latencyMillis > crawlerConfig.getSlowResponseMillis()) {
+                rate = Math.max(crawlerConfig.getMinRequestsPerSecond(), rate * 0.75);
+            } else {
+                rate = Math.min(crawlerConfig.getMaxRequestsPerSecond(), rate * 1.05);
+            }
+        }
+    }
+}
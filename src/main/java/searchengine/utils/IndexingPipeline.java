@@ -0,0 +1,330 @@
+package searchengine.utils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.index.InvertedIndex;
+import searchengine.model.Site;
+import searchengine.repositories.BulkIndexRepository;
+import searchengine.repositories.LemmaRepository;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+//отложенная запись результатов обхода: потоки краулера только ставят
+//разобранные страницы в очередь, отдельный поток собирает их в пакеты
+//и пишет страницы, леммы и индексы многострочными запросами
+@Component
+@Log4j2
+public class IndexingPipeline {
+    private static final int BATCH_SIZE = 100;
+    private static final long LINGER_MS = 200;
+    private static final int QUEUE_CAPACITY = 1000;
+
+    private final BulkIndexRepository bulkIndexRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final InvertedIndex invertedIndex;
+    private final LemmaRepository lemmaRepository;
+    private final SiteCounters siteCounters;
+    private final Timer writeTimer;
+    private final BlockingQueue<ParsedPage> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final Map<Integer, LemmaDictionary> dictionaries = new ConcurrentHashMap<>();
+    private final Map<Integer, Integer> unwrittenBySite = new HashMap<>();
+    private Thread writer;
+
+    public IndexingPipeline(BulkIndexRepository bulkIndexRepository, TransactionTemplate transactionTemplate, InvertedIndex invertedIndex, LemmaRepository lemmaRepository, SiteCounters siteCounters, MeterRegistry meterRegistry) {
+        this.bulkIndexRepository = bulkIndexRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.invertedIndex = invertedIndex;
+        this.lemmaRepository = lemmaRepository;
+        this.siteCounters = siteCounters;
+        this.writeTimer = meterRegistry.timer("pipeline.write");
+        Gauge.builder("pipeline.queue.size", queue, BlockingQueue::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        writer = new Thread(this::run, "indexing-pipeline");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writer.interrupt();
+    }
+
+    //блокируется, если очередь заполнена - так краулер не обгоняет базу
+    public void submit(ParsedPage page) throws InterruptedException {
+        LemmaDictionary dictionary = getDictionary(page.getSite());
+        //для уже сохранённых страниц разница частот считается при записи,
+        //когда известны их прежние леммы
+        if (page.getPageId() == null) {
+            applyLemmaDelta(dictionary, Map.of(), page.getLemmas(), null);
+        }
+        synchronized (this) {
+            unwrittenBySite.merge(page.getSite().getId(), 1, Integer::sum);
+        }
+        queue.put(page);
+    }
+
+    //словарь создаётся при первом обращении одним запросом ко всем леммам сайта
+    public LemmaDictionary getDictionary(Site site) {
+        return dictionaries.computeIfAbsent(site.getId(), id -> new LemmaDictionary(lemmaRepository.findBySite(site)));
+    }
+
+    public void removeSite(int siteId) {
+        dictionaries.remove(siteId);
+        siteCounters.remove(siteId);
+    }
+
+    //ждёт, пока все принятые страницы сайта будут записаны
+    public synchronized void flush(int siteId) throws InterruptedException {
+        while (unwrittenBySite.containsKey(siteId)) {
+            wait();
+        }
+    }
+
+    private void run() {
+        List<ParsedPage> batch = new ArrayList<>(BATCH_SIZE);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                collectBatch(batch);
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("error", e);
+            } finally {
+                complete(batch);
+            }
+        }
+    }
+
+    private void collectBatch(List<ParsedPage> batch) throws InterruptedException {
+        ParsedPage first = queue.poll(LINGER_MS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.currentTimeMillis() + LINGER_MS;
+        while (batch.size() < BATCH_SIZE) {
+            long remaining = deadline - System.currentTimeMillis();
+            ParsedPage next = remaining > 0 ? queue.poll(remaining, TimeUnit.MILLISECONDS) : queue.poll();
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void write(List<ParsedPage> batch) {
+        Map<Integer, List<ParsedPage>> pagesBySite = new LinkedHashMap<>();
+        for (ParsedPage page : batch) {
+            pagesBySite.computeIfAbsent(page.getSite().getId(), id -> new ArrayList<>()).add(page);
+        }
+        for (Map.Entry<Integer, List<ParsedPage>> entry : pagesBySite.entrySet()) {
+            LemmaDictionary dictionary = dictionaries.get(entry.getKey());
+            if (dictionary != null) {
+                writeTimer.record(() -> writeSitePages(entry.getKey(), entry.getValue(), dictionary));
+            }
+        }
+    }
+
+    private void writeSitePages(int siteId, List<ParsedPage> pages, LemmaDictionary dictionary) {
+        //из нескольких версий одной страницы в пакете записывается последняя
+        Map<String, ParsedPage> newPages = new LinkedHashMap<>();
+        Map<Integer, ParsedPage> storedPages = new LinkedHashMap<>();
+        for (ParsedPage page : pages) {
+            if (page.getPageId() != null) {
+                storedPages.put(page.getPageId(), page);
+                continue;
+            }
+            ParsedPage replaced = newPages.put(page.getPath(), page);
+            if (replaced != null) {
+                applyLemmaDelta(dictionary, replaced.getLemmas(), Map.of(), null);
+            }
+        }
+
+        //действия, возвращающие словарь к состоянию до приёма страниц пакета
+        List<Runnable> rollback = new ArrayList<>();
+        for (ParsedPage page : newPages.values()) {
+            rollback.add(() -> applyLemmaDelta(dictionary, page.getLemmas(), Map.of(), null));
+        }
+        //счётчики создаются до транзакции, чтобы начальные значения не включали этот пакет
+        SiteCounters.Counters counters = siteCounters.get(siteId);
+        int[] counterDeltas = new int[3];
+        Map<Integer, ParsedPage> insertedPages = new LinkedHashMap<>();
+        Map<Integer, Map<String, Integer>> previousLemmas = new HashMap<>();
+        Map<String, Integer> frequencyDeltas = new HashMap<>();
+        Map<String, Integer> lemmaIds = new HashMap<>();
+        List<int[]> addedRows = new ArrayList<>();
+        List<int[]> changedRows = new ArrayList<>();
+        List<int[]> deletedRows = new ArrayList<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<ParsedPage> pending = new ArrayList<>(newPages.values());
+                Map<String, Integer> insertedIds = bulkIndexRepository.insertPages(siteId, pending);
+                //страница с таким путём уже есть - например, /api/indexPage для проиндексированной
+                //страницы; вместо вставки она обновляется по разнице лемм
+                List<String> existingPaths = new ArrayList<>();
+                for (ParsedPage page : pending) {
+                    Integer pageId = insertedIds.get(page.getPath());
+                    if (pageId != null) {
+                        insertedPages.put(pageId, page);
+                    } else {
+                        existingPaths.add(page.getPath());
+                        applyLemmaDelta(dictionary, page.getLemmas(), Map.of(), rollback);
+                    }
+                }
+                if (!existingPaths.isEmpty()) {
+                    bulkIndexRepository.findPageIds(siteId, existingPaths).forEach((path, pageId) ->
+                            storedPages.putIfAbsent(pageId, newPages.get(path).withPageId(pageId)));
+                }
+
+                if (!storedPages.isEmpty()) {
+                    previousLemmas.putAll(bulkIndexRepository.findPageLemmas(storedPages.keySet()));
+                    for (ParsedPage page : storedPages.values()) {
+                        applyLemmaDelta(dictionary, previousLemmas.getOrDefault(page.getPageId(), Map.of()), page.getLemmas(), rollback);
+                    }
+                    bulkIndexRepository.updatePages(storedPages.values().stream().filter(page -> !page.isRemoved()).toList());
+                }
+                Map<Integer, ParsedPage> contents = new HashMap<>(insertedPages);
+                storedPages.forEach((pageId, page) -> {
+                    if (!page.isRemoved()) {
+                        contents.put(pageId, page);
+                    }
+                });
+                bulkIndexRepository.insertPageContents(contents);
+
+                frequencyDeltas.putAll(dictionary.drainDeltas());
+                if (!frequencyDeltas.isEmpty()) {
+                    Map<String, Integer> frequencies = new HashMap<>();
+                    lemmaIds.putAll(bulkIndexRepository.upsertLemmas(siteId, frequencyDeltas, frequencies));
+                    counterDeltas[1] = countLemmaChanges(frequencyDeltas, frequencies);
+                }
+
+                insertedPages.forEach((pageId, page) ->
+                        diffIndexRows(pageId, Map.of(), page.getLemmas(), dictionary, lemmaIds, addedRows, changedRows, deletedRows));
+                storedPages.forEach((pageId, page) ->
+                        diffIndexRows(pageId, previousLemmas.getOrDefault(pageId, Map.of()), page.getLemmas(),
+                                dictionary, lemmaIds, addedRows, changedRows, deletedRows));
+                bulkIndexRepository.deleteIndexes(deletedRows);
+                bulkIndexRepository.updateIndexes(changedRows);
+                bulkIndexRepository.insertIndexes(addedRows);
+                List<Integer> removedIds = storedPages.values().stream()
+                        .filter(ParsedPage::isRemoved).map(ParsedPage::getPageId).toList();
+                bulkIndexRepository.deletePages(removedIds);
+
+                counterDeltas[0] = insertedPages.size() - removedIds.size();
+                counterDeltas[2] = addedRows.size() - deletedRows.size();
+                bulkIndexRepository.addSiteCounts(siteId, counterDeltas[0], counterDeltas[1], counterDeltas[2]);
+            });
+        } catch (RuntimeException e) {
+            //транзакция откатилась - страницы пакета не записаны, их вклад в частоты убираем
+            dictionary.restoreDeltas(frequencyDeltas);
+            rollback.forEach(Runnable::run);
+            throw e;
+        }
+
+        dictionary.assignIds(lemmaIds);
+        counters.add(counterDeltas[0], counterDeltas[1], counterDeltas[2]);
+        for (int[] row : deletedRows) {
+            invertedIndex.remove(siteId, row[1], row[0]);
+        }
+        for (int[] row : changedRows) {
+            invertedIndex.add(siteId, row[1], row[0], row[2]);
+        }
+        for (int[] row : addedRows) {
+            invertedIndex.add(siteId, row[1], row[0], row[2]);
+        }
+        insertedPages.forEach((pageId, page) -> invertedIndex.setPageLength(siteId, pageId, page.getLength()));
+        storedPages.forEach((pageId, page) -> {
+            if (page.isRemoved()) {
+                invertedIndex.getStatistics(siteId).removePage(pageId);
+            } else {
+                invertedIndex.setPageLength(siteId, pageId, page.getLength());
+            }
+        });
+    }
+
+    //строки {page_id, lemma_id, rank}, которые нужно добавить, изменить и удалить,
+    //чтобы индекс страницы соответствовал новым леммам
+    private void diffIndexRows(int pageId, Map<String, Integer> previous, Map<String, Integer> current,
+                               LemmaDictionary dictionary, Map<String, Integer> lemmaIds,
+                               List<int[]> addedRows, List<int[]> changedRows, List<int[]> deletedRows) {
+        for (Map.Entry<String, Integer> lemma : current.entrySet()) {
+            Integer lemmaId = lemmaIds.getOrDefault(lemma.getKey(), dictionary.getId(lemma.getKey()));
+            Integer previousRank = previous.get(lemma.getKey());
+            if (lemmaId == null) {
+                continue;
+            }
+            if (previousRank == null) {
+                addedRows.add(new int[]{pageId, lemmaId, lemma.getValue()});
+            } else if (!previousRank.equals(lemma.getValue())) {
+                changedRows.add(new int[]{pageId, lemmaId, lemma.getValue()});
+            }
+        }
+        for (Map.Entry<String, Integer> lemma : previous.entrySet()) {
+            Integer lemmaId = lemmaIds.getOrDefault(lemma.getKey(), dictionary.getId(lemma.getKey()));
+            if (lemmaId != null && !current.containsKey(lemma.getKey())) {
+                deletedRows.add(new int[]{pageId, lemmaId, lemma.getValue()});
+            }
+        }
+    }
+
+    //сколько лемм появилось на сайте (frequency стала больше нуля) минус сколько пропало
+    private int countLemmaChanges(Map<String, Integer> frequencyDeltas, Map<String, Integer> frequencies) {
+        int result = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            int previous = entry.getValue() - frequencyDeltas.getOrDefault(entry.getKey(), 0);
+            if (previous <= 0 && entry.getValue() > 0) {
+                result++;
+            } else if (previous > 0 && entry.getValue() <= 0) {
+                result--;
+            }
+        }
+        return result;
+    }
+
+    //леммы, появившиеся на странице, увеличивают частоту, пропавшие - уменьшают;
+    //обратное изменение добавляется в rollback
+    private void applyLemmaDelta(LemmaDictionary dictionary, Map<String, Integer> from, Map<String, Integer> to, List<Runnable> rollback) {
+        for (String lemma : to.keySet()) {
+            if (!from.containsKey(lemma)) {
+                dictionary.increment(lemma);
+            }
+        }
+        for (String lemma : from.keySet()) {
+            if (!to.containsKey(lemma)) {
+                dictionary.decrement(lemma);
+            }
+        }
+        if (rollback != null) {
+            rollback.add(() -> applyLemmaDelta(dictionary, to, from, null));
+        }
+    }
+
+    private void complete(List<ParsedPage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (ParsedPage page : batch) {
+                unwrittenBySite.computeIfPresent(page.getSite().getId(), (id, count) -> count > 1 ? count - 1 : null);
+            }
+            notifyAll();
+        }
+        batch.clear();
+    }
+}
@@ -0,0 +1,88 @@
+package searchengine.utils;
+
+import searchengine.model.Lemma;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//словарь лемм одного сайта: lemma -> id и ещё не записанные изменения frequency.
+//Потоки краулера только меняют счётчики, изменения частот
+//пакетно переносятся в таблицу Lemma потоком записи
+public class LemmaDictionary {
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> changedEntries = new ConcurrentLinkedQueue<>();
+
+    public LemmaDictionary(List<Lemma> lemmas) {
+        for (Lemma lemma : lemmas) {
+            Entry entry = new Entry(lemma.getLemma());
+            entry.id = lemma.getId();
+            entries.put(lemma.getLemma(), entry);
+        }
+    }
+
+    public void increment(String lemma) {
+        Entry entry = entries.computeIfAbsent(lemma, Entry::new);
+        if (entry.pendingDelta.getAndIncrement() == 0) {
+            changedEntries.add(entry);
+        }
+    }
+
+    public void decrement(String lemma) {
+        Entry entry = entries.computeIfAbsent(lemma, Entry::new);
+        if (entry.pendingDelta.getAndDecrement() == 0) {
+            changedEntries.add(entry);
+        }
+    }
+
+    public Integer getId(String lemma) {
+        Entry entry = entries.get(lemma);
+        return entry == null || entry.id == 0 ? null : entry.id;
+    }
+
+    //забирает накопленные изменения частот
+    Map<String, Integer> drainDeltas() {
+        Map<String, Integer> result = new HashMap<>();
+        Entry entry;
+        while ((entry = changedEntries.poll()) != null) {
+            int delta = entry.pendingDelta.getAndSet(0);
+            if (delta != 0) {
+                result.merge(entry.lemma, delta, Integer::sum);
+            }
+        }
+        return result;
+    }
+
+    //возвращает изменения, которые не удалось записать
+    void restoreDeltas(Map<String, Integer> deltas) {
+        deltas.forEach((lemma, delta) -> {
+            Entry entry = entries.computeIfAbsent(lemma, Entry::new);
+            if (entry.pendingDelta.getAndAdd(delta) == 0) {
+                changedEntries.add(entry);
+            }
+        });
+    }
+
+    void assignIds(Map<String, Integer> ids) {
+        ids.forEach((lemma, id) -> {
+            Entry entry = entries.get(lemma);
+            if (entry != null) {
+                entry.id = id;
+            }
+        });
+    }
+
+    private static class Entry {
+        private final String lemma;
+        private final AtomicInteger pendingDelta = new AtomicInteger();
+        private volatile int id;
+
+        private Entry(String lemma) {
+            this.lemma = lemma;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package searchengine.utils;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.log4j.Log4j2;
 import org.apache.lucene.morphology.LuceneMorphology;
 import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
@@ -8,123 +12,125 @@ import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Function;
 
+//один экземпляр на всё приложение: словари морфологии загружаются при старте
+//и только читаются, поэтому их безопасно использовать из всех потоков краулера
 @Component
 @Log4j2
 public class LemmaFinder {
+    private static final int WORD_FORM_CACHE_SIZE = 200_000;
+
     private final LuceneMorphology russianLuceneMorphology;
     private final LuceneMorphology englishLuceneMorphology;
+    private final WordFormCache wordFormCache = new WordFormCache(WORD_FORM_CACHE_SIZE);
+    private final Function<String, String> russianNormalForm;
+    private final Function<String, String> englishNormalForm;
+    private final Timer analyzeTimer;
+    private final Timer lemmasTimer;
 
     private final String[] russianSpeechParts = new String[]{"МЕЖД", "СОЮЗ", "ПРЕДЛ", "ЧАСТ", "МС", "МС-П", "ВВОДН"};
     private final String[] englishSpeechParts = new String[]{"INT", "CONJ", "PREP", "PART", "PN pers", "PN_ADJ", "ARTICLE"};
 
-    public LemmaFinder() throws IOException {
+    public LemmaFinder(MeterRegistry meterRegistry) throws IOException {
+        long start = System.currentTimeMillis();
         this.russianLuceneMorphology = new RussianLuceneMorphology();
         this.englishLuceneMorphology = new EnglishLuceneMorphology();
+        this.russianNormalForm = word -> findNormalForm(russianLuceneMorphology, word);
+        this.englishNormalForm = word -> findNormalForm(englishLuceneMorphology, word);
+        this.analyzeTimer = meterRegistry.timer("lemmatizer", "operation", "analyze");
+        this.lemmasTimer = meterRegistry.timer("lemmatizer", "operation", "lemmas");
+        Gauge.builder("lemmatizer.word.cache.hit.rate", wordFormCache, WordFormCache::getHitRate).register(meterRegistry);
+        Gauge.builder("lemmatizer.word.cache.size", wordFormCache, WordFormCache::size).register(meterRegistry);
+        FunctionCounter.builder("lemmatizer.word.cache.hits", wordFormCache, WordFormCache::getHits).register(meterRegistry);
+        FunctionCounter.builder("lemmatizer.word.cache.misses", wordFormCache, WordFormCache::getMisses).register(meterRegistry);
+        log.info("Morphology dictionaries loaded in " + (System.currentTimeMillis() - start) + " ms");
     }
 
     public Map<String, Integer> getLemmasAndFrequency(String text){
-        Map<String, Integer> result = null;
+        Map<String, Integer> result = new HashMap<>();
+        Timer.Sample sample = Timer.start();
         try {
-            String[] allWords = getAllWords(text);
-            result = new HashMap<>();
-            for (String word :
-                    allWords) {
-                if(checkLength(word)){
-                    continue;
-                }
-
-                List<String> wordsNormalForm = null;
-                if (isRussian(word)) {
-                    List<String> wordsMorphInfo = russianLuceneMorphology.getMorphInfo(word);
-                    if(checkParticle(wordsMorphInfo)){
-                        continue;
-                    }
-
-                    wordsNormalForm = russianLuceneMorphology.getNormalForms(word);
-                    if(wordsNormalForm.isEmpty()){
-                        continue;
-                    }
-                }else if(isEnglish(word)){
-                    List<String> wordsMorphInfo = englishLuceneMorphology.getMorphInfo(word);
-                    if(checkParticle(wordsMorphInfo)){
-                        continue;
-                    }
-
-                    wordsNormalForm = englishLuceneMorphology.getNormalForms(word);
-                    if(wordsNormalForm.isEmpty()){
-                        continue;
-                    }
-                }
-
-                if(wordsNormalForm == null){
-                    continue;
+            WordTokenizer.tokenize(text, (buffer, length, start, russian) -> {
+                String normalWord = getLemma(buffer, length, russian);
+                if(normalWord != null){
+                    result.merge(normalWord, 1, Integer::sum);
                 }
-
-                String normalWord = wordsNormalForm.get(0);
-
-                if (result.containsKey(normalWord)) {
-                    result.put(normalWord, result.get(normalWord) + 1);
-                }else{
-                    result.put(normalWord, 1);
-                }
-            }
-            return result;
+            });
         } catch (Exception e) {
             log.error("error", e);
         }
+        sample.stop(lemmasTimer);
         return result;
     }
 
     public List<String> getLemmas(String text){
-        List<String> result = null;
+        List<String> result = new ArrayList<>();
+        Timer.Sample sample = Timer.start();
         try {
-            String[] allWords = getAllWords(text);
-            result = new ArrayList<>();
-            for (String word :
-                    allWords) {
-                if(checkLength(word)){
-                    continue;
+            WordTokenizer.tokenize(text, (buffer, length, start, russian) -> {
+                String normalWord = getLemma(buffer, length, russian);
+                if(normalWord != null){
+                    result.add(normalWord);
                 }
+            });
+        } catch (Exception e) {
+            log.error("error", e);
+        }
+        sample.stop(lemmasTimer);
+        return result;
+    }
 
-                List<String> wordsNormalForm = null;
-                if (isRussian(word)) {
-                    List<String> wordsMorphInfo = russianLuceneMorphology.getMorphInfo(word);
-                    if(checkParticle(wordsMorphInfo)){
-                        continue;
-                    }
-
-                    wordsNormalForm = russianLuceneMorphology.getNormalForms(word);
-                    if(wordsNormalForm.isEmpty()){
-                        continue;
-                    }
-                }else if (isEnglish(word)){
-                    List<String> wordsMorphInfo = englishLuceneMorphology.getMorphInfo(word);
-                    if(checkParticle(wordsMorphInfo)){
-                        continue;
-                    }
-
-                    wordsNormalForm = englishLuceneMorphology.getNormalForms(word);
-                    if(wordsNormalForm.isEmpty()){
-                        continue;
-                    }
+    //разбор текста страницы для индекса и сниппетов за один проход
+    public PageText analyze(String title, String text){
+        PageText.Builder builder = PageText.builder(title, text);
+        Timer.Sample sample = Timer.start();
+        try {
+            WordTokenizer.tokenize(text, (buffer, length, start, russian) -> {
+                String normalWord = getLemma(buffer, length, russian);
+                if(normalWord != null){
+                    builder.add(start, start + length, normalWord);
                 }
-
-                result.add(wordsNormalForm.get(0));
-            }
-            return result;
+            });
         } catch (Exception e) {
             log.error("error", e);
         }
-        return result;
+        sample.stop(analyzeTimer);
+        return builder.build();
     }
 
-    private String[] getAllWords(String text){
-        return text.toLowerCase()
-                .replaceAll("<[^>]*>", " ")
-                .replaceAll("[^а-яa-z]+", " ")
-                .trim()
-                .split("\\s");
+    //нормальная форма слова из буфера WordTokenizer или null для коротких слов,
+    //служебных частей речи и слов, которых нет в словарях
+    private String getLemma(char[] buffer, int length, boolean russian){
+        if(length < 3){
+            return null;
+        }
+        String word = new String(buffer, 0, length);
+        return toLemma(wordFormCache.get(word, russian ? russianNormalForm : englishNormalForm));
+    }
+
+    private String toLemma(String normalWord){
+        return normalWord.equals(WordFormCache.NO_LEMMA) ? null : normalWord;
+    }
+
+    public WordFormCache getWordFormCache() {
+        return wordFormCache;
+    }
+
+    private String findNormalForm(LuceneMorphology luceneMorphology, String word){
+        try {
+            List<String> wordsMorphInfo = luceneMorphology.getMorphInfo(word);
+            if(checkParticle(wordsMorphInfo)){
+                return WordFormCache.NO_LEMMA;
+            }
+
+            List<String> wordsNormalForm = luceneMorphology.getNormalForms(word);
+            return wordsNormalForm.isEmpty() ? WordFormCache.NO_LEMMA : wordsNormalForm.get(0);
+        } catch (RuntimeException e) {
+            //слово с неподдерживаемыми символами кэшируется как пропуск
+            log.warn("Unable to lemmatize word: " + word);
+            return WordFormCache.NO_LEMMA;
+        }
     }
 
     private boolean checkParticle(List<String> wordsMorphInfo){
@@ -147,15 +153,23 @@ public class LemmaFinder {
         return Arrays.stream(englishSpeechParts).anyMatch(word::contains);
     }
 
-    private boolean checkLength(String word) {
-        return word.isBlank() || word.length() < 3;
-    }
-
     private boolean isEnglish(String word) {
-        return word.matches("[a-zA-Z]+");
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z')) {
+                return false;
+            }
+        }
+        return !word.isEmpty();
     }
 
     private boolean isRussian(String word) {
-        return word.matches("[ёа-яЁА-Я]+");
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (!(c >= 'а' && c <= 'я') && !(c >= 'А' && c <= 'Я') && c != 'ё' && c != 'Ё') {
+                return false;
+            }
+        }
+        return !word.isEmpty();
     }
 }
@@ -0,0 +1,167 @@
+package searchengine.utils;
+
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+//текст страницы, разобранный при индексации: заголовок, текст без разметки
+//и позиции всех слов, у которых есть лемма. Позиции хранятся вместе со
+//страницей, поэтому сниппет строится без повторного разбора и лемматизации
+@Getter
+public class PageText {
+    private final String title;
+    private final String text;
+    //леммы страницы в порядке первого появления, слова ссылаются на них по номеру
+    private final String[] lemmas;
+    private final int[] tokenStarts;
+    private final int[] tokenEnds;
+    private final int[] tokenLemmas;
+    private final int tokenCount;
+
+    private PageText(String title, String text, String[] lemmas, int[] tokenStarts, int[] tokenEnds, int[] tokenLemmas, int tokenCount) {
+        this.title = title;
+        this.text = text;
+        this.lemmas = lemmas;
+        this.tokenStarts = tokenStarts;
+        this.tokenEnds = tokenEnds;
+        this.tokenLemmas = tokenLemmas;
+        this.tokenCount = tokenCount;
+    }
+
+    //число вхождений каждой леммы - rank для таблицы индексов
+    public Map<String, Integer> getLemmaFrequencies() {
+        int[] counts = new int[lemmas.length];
+        for (int i = 0; i < tokenCount; i++) {
+            counts[tokenLemmas[i]]++;
+        }
+        Map<String, Integer> result = new HashMap<>();
+        for (int i = 0; i < lemmas.length; i++) {
+            result.put(lemmas[i], counts[i]);
+        }
+        return result;
+    }
+
+    //формат: число лемм, леммы (длина + UTF-8), число слов,
+    //для каждого слова - отступ от конца предыдущего, длина и номер леммы; всё в varint
+    public byte[] encodeTokens() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(tokenCount * 3 + lemmas.length * 8);
+        writeVarint(out, lemmas.length);
+        for (String lemma : lemmas) {
+            byte[] bytes = lemma.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        writeVarint(out, tokenCount);
+        int previousEnd = 0;
+        for (int i = 0; i < tokenCount; i++) {
+            writeVarint(out, tokenStarts[i] - previousEnd);
+            writeVarint(out, tokenEnds[i] - tokenStarts[i]);
+            writeVarint(out, tokenLemmas[i]);
+            previousEnd = tokenEnds[i];
+        }
+        return out.toByteArray();
+    }
+
+    public static PageText decode(String title, String text, byte[] tokens) {
+        int[] position = new int[1];
+        int lemmaCount = readVarint(tokens, position);
+        String[] lemmas = new String[lemmaCount];
+        for (int i = 0; i < lemmaCount; i++) {
+            int length = readVarint(tokens, position);
+            lemmas[i] = new String(tokens, position[0], length, StandardCharsets.UTF_8);
+            position[0] += length;
+        }
+        int tokenCount = readVarint(tokens, position);
+        int[] starts = new int[tokenCount];
+        int[] ends = new int[tokenCount];
+        int[] tokenLemmas = new int[tokenCount];
+        int previousEnd = 0;
+        for (int i = 0; i < tokenCount; i++) {
+            starts[i] = previousEnd + readVarint(tokens, position);
+            ends[i] = starts[i] + readVarint(tokens, position);
+            tokenLemmas[i] = readVarint(tokens, position);
+            previousEnd = ends[i];
+        }
+        return new PageText(title, text, lemmas, starts, ends, tokenLemmas, tokenCount);
+    }
+
+    //хэш того, что попадает в индекс: изменения разметки без изменения текста его не меняют
+    public static String hash(String title, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((title == null ? "" : title).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update((text == null ? "" : text).getBytes(StandardCharsets.UTF_8));
+            StringBuilder result = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Builder builder(String title, String text) {
+        return new Builder(title, text);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[position[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    static class Builder {
+        private final String title;
+        private final String text;
+        private final Map<String, Integer> lemmaNumbers = new HashMap<>();
+        private int[] starts = new int[256];
+        private int[] ends = new int[256];
+        private int[] tokenLemmas = new int[256];
+        private int tokenCount;
+
+        private Builder(String title, String text) {
+            this.title = title;
+            this.text = text;
+        }
+
+        void add(int start, int end, String lemma) {
+            if (tokenCount == starts.length) {
+                starts = Arrays.copyOf(starts, tokenCount * 2);
+                ends = Arrays.copyOf(ends, tokenCount * 2);
+                tokenLemmas = Arrays.copyOf(tokenLemmas, tokenCount * 2);
+            }
+            starts[tokenCount] = start;
+            ends[tokenCount] = end;
+            tokenLemmas[tokenCount] = lemmaNumbers.computeIfAbsent(lemma, l -> lemmaNumbers.size());
+            tokenCount++;
+        }
+
+        PageText build() {
+            String[] lemmas = new String[lemmaNumbers.size()];
+            lemmaNumbers.forEach((lemma, number) -> lemmas[number] = lemma);
+            return new PageText(title, text, lemmas, starts, ends, tokenLemmas, tokenCount);
+        }
+    }
+}
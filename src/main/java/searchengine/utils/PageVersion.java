@@ -0,0 +1,19 @@
+package searchengine.utils;
+
+import lombok.Getter;
+
+//сохранённая версия страницы, с которой сравнивается ответ при повторном обходе
+@Getter
+public class PageVersion {
+    private final int pageId;
+    private final String etag;
+    private final String lastModified;
+    private final String contentHash;
+
+    public PageVersion(int pageId, String etag, String lastModified, String contentHash) {
+        this.pageId = pageId;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+    }
+}
@@ -0,0 +1,92 @@
+package searchengine.utils;
+
+import lombok.Getter;
+import searchengine.model.Site;
+
+import java.util.Map;
+
+@Getter
+public class ParsedPage {
+    private final Site site;
+    private final String path;
+    private final int code;
+    //html страницы, сжатый ContentCompressor ещё в потоке разбора
+    private final byte[] compressedContent;
+    private final String title;
+    private final String text;
+    private final byte[] tokens;
+    private final Map<String, Integer> lemmas;
+    //число слов страницы, у которых есть лемма
+    private final int length;
+    private final String contentHash;
+    private final String etag;
+    private final String lastModified;
+    //id уже сохранённой страницы, которую нужно обновить, или null для новой
+    private final Integer pageId;
+    //страница пропала с сайта и удаляется из индекса
+    private final boolean removed;
+
+    public ParsedPage(Site site, String path, int code, String content, PageText pageText) {
+        this(site, path, code, content, pageText, null, null, null);
+    }
+
+    public ParsedPage(Site site, String path, int code, String content, PageText pageText, String etag, String lastModified, Integer pageId) {
+        this.site = site;
+        this.path = path;
+        this.code = code;
+        this.compressedContent = ContentCompressor.compress(content);
+        this.title = pageText.getTitle();
+        this.text = pageText.getText();
+        this.tokens = pageText.encodeTokens();
+        this.lemmas = pageText.getLemmaFrequencies();
+        this.length = pageText.getTokenCount();
+        this.contentHash = PageText.hash(pageText.getTitle(), pageText.getText());
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.pageId = pageId;
+        this.removed = false;
+    }
+
+    private ParsedPage(Site site, String path, int code, int pageId) {
+        this.site = site;
+        this.path = path;
+        this.code = code;
+        this.compressedContent = null;
+        this.title = null;
+        this.text = null;
+        this.tokens = null;
+        this.lemmas = Map.of();
+        this.length = 0;
+        this.contentHash = null;
+        this.etag = null;
+        this.lastModified = null;
+        this.pageId = pageId;
+        this.removed = true;
+    }
+
+    private ParsedPage(ParsedPage page, int pageId) {
+        this.site = page.site;
+        this.path = page.path;
+        this.code = page.code;
+        this.compressedContent = page.compressedContent;
+        this.title = page.title;
+        this.text = page.text;
+        this.tokens = page.tokens;
+        this.lemmas = page.lemmas;
+        this.length = page.length;
+        this.contentHash = page.contentHash;
+        this.etag = page.etag;
+        this.lastModified = page.lastModified;
+        this.pageId = pageId;
+        this.removed = page.removed;
+    }
+
+    public static ParsedPage removed(Site site, String path, int code, int pageId) {
+        return new ParsedPage(site, path, code, pageId);
+    }
+
+    //та же страница, которая оказалась уже сохранённой под этим id
+    public ParsedPage withPageId(int pageId) {
+        return new ParsedPage(this, pageId);
+    }
+}
@@ -0,0 +1,56 @@
+package searchengine.utils;
+
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+import searchengine.model.Site;
+import searchengine.repositories.SiteRepository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//число страниц, лемм и индексов каждого сайта в памяти. Меняет их только
+//IndexingPipeline - после записи пакета, в той же транзакции обновляя
+//page_count, lemma_count и index_count в таблице Site. Начальные значения
+//читаются оттуда при первом обращении к сайту
+@Component
+public class SiteCounters {
+    private final SiteRepository siteRepository;
+    private final Map<Integer, Counters> counters = new ConcurrentHashMap<>();
+
+    public SiteCounters(SiteRepository siteRepository) {
+        this.siteRepository = siteRepository;
+    }
+
+    public Counters get(int siteId) {
+        return counters.computeIfAbsent(siteId, id -> siteRepository.findById(id)
+                .map(Counters::new)
+                .orElseGet(Counters::new));
+    }
+
+    public void remove(int siteId) {
+        counters.remove(siteId);
+    }
+
+    @Getter
+    public static class Counters {
+        private final AtomicInteger pages = new AtomicInteger();
+        private final AtomicInteger lemmas = new AtomicInteger();
+        private final AtomicInteger indexes = new AtomicInteger();
+
+        private Counters() {
+        }
+
+        private Counters(Site site) {
+            pages.set(site.getPageCount());
+            lemmas.set(site.getLemmaCount());
+            indexes.set(site.getIndexCount());
+        }
+
+        void add(int pageDelta, int lemmaDelta, int indexDelta) {
+            pages.addAndGet(pageDelta);
+            lemmas.addAndGet(lemmaDelta);
+            indexes.addAndGet(indexDelta);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package searchengine.utils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import searchengine.repositories.BulkIndexRepository;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//status_time сайтов пишется не на каждую обработанную страницу, а раз в
+//FLUSH_INTERVAL_MS одним пакетным UPDATE - только самое позднее время каждого сайта
+@Component
+@Log4j2
+public class StatusTimeWriter {
+    private static final long FLUSH_INTERVAL_MS = 5000;
+
+    private final BulkIndexRepository bulkIndexRepository;
+    private final Map<Integer, LocalDateTime> pendingTimes = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor;
+
+    public StatusTimeWriter(BulkIndexRepository bulkIndexRepository) {
+        this.bulkIndexRepository = bulkIndexRepository;
+    }
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "status-time-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        flush();
+    }
+
+    //объект сайта не меняется: его сохраняет поток indexSite, а touch вызывают потоки разбора
+    public void touch(int siteId) {
+        pendingTimes.put(siteId, LocalDateTime.now());
+    }
+
+    //вызывается перед окончательным сохранением сайта, чтобы следующий flush не записал
+    //поверх него более раннее время
+    public void forget(int siteId) {
+        pendingTimes.remove(siteId);
+    }
+
+    public void flush() {
+        Map<Integer, LocalDateTime> times = new HashMap<>();
+        for (Integer siteId : pendingTimes.keySet()) {
+            LocalDateTime time = pendingTimes.remove(siteId);
+            if (time != null) {
+                times.put(siteId, time);
+            }
+        }
+        if (times.isEmpty()) {
+            return;
+        }
+        try {
+            bulkIndexRepository.updateStatusTimes(times);
+        } catch (Exception e) {
+            log.error("error", e);
+        }
+    }
+}
@@ -1,80 +1,237 @@
 package searchengine.utils;
 
 import lombok.extern.log4j.Log4j2;
+import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
-import searchengine.model.Index;
-import searchengine.model.Lemma;
-import searchengine.model.Page;
+import searchengine.config.CrawlerConfig;
 import searchengine.model.Site;
-import searchengine.repositories.IndexRepository;
-import searchengine.repositories.LemmaRepository;
-import searchengine.repositories.PageRepository;
-import searchengine.repositories.SiteRepository;
 
 import java.io.IOException;
-import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+//обход одного сайта: очередь ссылок (frontier) разбирается в два этапа -
+//загрузка страниц в пуле потоков ввода-вывода с ограничением числа соединений
+//к хосту и разбор/лемматизация в пуле по числу ядер. Посещённые пути хранятся
+//в памяти, поэтому проверка дублей не обращается к базе.
+//При повторном обходе уже сохранённые страницы запрашиваются условным GET,
+//а неизменённые по хэшу текста не лемматизируются и не перезаписываются
 @Log4j2
-public class WebCrawler extends RecursiveAction {
-    private final String url;
+public class WebCrawler {
+    private static final long POLL_TIMEOUT_MS = 100;
+
     private final Site site;
-    private static PageRepository pageRepository;
-    private static SiteRepository siteRepository;
-    private static LemmaRepository lemmaRepository;
-    private static IndexRepository indexRepository;
-    private static String userAgent;
-    private static String referrer;
+    private final StatusTimeWriter statusTimeWriter;
+    private final IndexingPipeline indexingPipeline;
+    private final CrawlerConfig crawlerConfig;
+    private final HostRateLimiter rateLimiter;
+    private final LemmaFinder lemmaFinder;
+    private final String host;
+    //соединения этого обхода к хосту. Семафор живёт не дольше обхода: задачи загрузки,
+    //отброшенные shutdownNow при остановке, не возвращают разрешения, и следующий обход
+    //того же хоста не должен их ждать
+    private final Semaphore connections;
+    //path -> сохранённая версия страницы, пусто при полном обходе
+    private final Map<String, PageVersion> knownPages;
+    private final BlockingQueue<String> frontier = new LinkedBlockingQueue<>();
+    private final Set<String> visitedPaths = ConcurrentHashMap.newKeySet();
+    //ссылки, уже повторно поставленные в очередь после 429/503
+    private final Set<String> retriedUrls = ConcurrentHashMap.newKeySet();
+    //ссылки в очереди плюс обрабатываемые сейчас; ноль - обход завершён
+    private final AtomicInteger pendingUrls = new AtomicInteger();
+    private final AtomicInteger activeFetches = new AtomicInteger();
+    private final AtomicInteger crawledPages = new AtomicInteger();
+    private final AtomicInteger unchangedPages = new AtomicInteger();
+    //ответы с кодом ошибки и неудачные загрузки
+    private final AtomicInteger errorPages = new AtomicInteger();
+    private volatile boolean stopped;
     private static volatile boolean indexing;
 
-    public WebCrawler(String url, PageRepository pageRepository, SiteRepository siteRepository, LemmaRepository lemmaRepository, IndexRepository indexRepository) {
-        this.url = url;
-        WebCrawler.pageRepository = pageRepository;
-        WebCrawler.siteRepository = siteRepository;
-        WebCrawler.lemmaRepository = lemmaRepository;
-        WebCrawler.indexRepository = indexRepository;
-        this.site = WebCrawler.siteRepository.findByUrl(getFullDomainName(url));
-        indexing = true;
+    public WebCrawler(Site site, StatusTimeWriter statusTimeWriter, IndexingPipeline indexingPipeline, CrawlerConfig crawlerConfig, HostRateLimiter rateLimiter, LemmaFinder lemmaFinder, Map<String, PageVersion> knownPages) {
+        this.site = site;
+        this.statusTimeWriter = statusTimeWriter;
+        this.indexingPipeline = indexingPipeline;
+        this.crawlerConfig = crawlerConfig;
+        this.rateLimiter = rateLimiter;
+        this.lemmaFinder = lemmaFinder;
+        this.host = getFullDomainName(site.getUrl());
+        this.knownPages = knownPages;
+        this.connections = new Semaphore(crawlerConfig.getMaxConnectionsPerHost());
+    }
+
+    //fetchShare - сколько загрузок этот сайт может вести одновременно
+    public boolean crawl(ExecutorService fetchExecutor, ExecutorService parseExecutor, IntSupplier fetchShare) throws InterruptedException {
+        addUrl(site.getUrl(), getRelativeUrl(site.getUrl()));
+        //известные страницы проверяются все, даже если на них больше не ведут ссылки
+        for (String path : knownPages.keySet()) {
+            addUrl(getAbsUrl(path), path);
+        }
+
+        while (isRunning() && pendingUrls.get() > 0) {
+            String url = frontier.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (url == null) {
+                continue;
+            }
+            awaitFetchSlot(fetchShare);
+            if (!acquireConnection()) {
+                break;
+            }
+            activeFetches.incrementAndGet();
+            try {
+                //ожидание токена идёт в потоке-диспетчере, а не в пуле загрузки
+                rateLimiter.acquire(host);
+            } catch (InterruptedException e) {
+                releaseFetchSlot();
+                throw e;
+            }
+            try {
+                CompletableFuture
+                        .supplyAsync(() -> fetch(url), fetchExecutor)
+                        .whenComplete((response, e) -> releaseFetchSlot())
+                        .thenAcceptAsync(response -> crawlPage(url, response), parseExecutor)
+                        .whenComplete((result, e) -> {
+                            if (e != null && isRunning()) {
+                                errorPages.incrementAndGet();
+                                log.error("error", e);
+                            }
+                            pendingUrls.decrementAndGet();
+                        });
+            } catch (RejectedExecutionException e) {
+                releaseFetchSlot();
+                pendingUrls.decrementAndGet();
+            }
+        }
+        log.info(site.getUrl() + ": crawled " + crawledPages.get() + " pages, unchanged " + unchangedPages.get());
+        return isRunning();
     }
 
-    public WebCrawler(String url) {
-        this.url = url;
-        this.site = siteRepository.findByUrl(getFullDomainName(url));
+    public void stop() {
+        stopped = true;
     }
 
-    @Override
-    public void compute() {
-        try {
-            Thread.sleep(150);
-            Document document = Jsoup.connect(url)
-                    .userAgent(userAgent)
-                    .referrer(referrer)
-                    .timeout(10000)
-                    .get();
+    public int getCrawledPages() {
+        return crawledPages.get();
+    }
 
-            int statusCode = document.connection().response().statusCode();
-            String relUrl = getRelativeUrl(url);
-            String content = document.outerHtml();
-            String bodyText = document.body().text();
+    public Site getSite() {
+        return site;
+    }
 
-            Page newPage = initNewPage(statusCode, this.site, content, relUrl);
+    public int getErrorPages() {
+        return errorPages.get();
+    }
+
+    public int getUnchangedPages() {
+        return unchangedPages.get();
+    }
+
+    public int getQueuedPages() {
+        return frontier.size();
+    }
+
+    private boolean isRunning() {
+        return indexing && !stopped;
+    }
+
+    private void awaitFetchSlot(IntSupplier fetchShare) throws InterruptedException {
+        synchronized (activeFetches) {
+            while (isRunning() && activeFetches.get() >= fetchShare.getAsInt()) {
+                activeFetches.wait(POLL_TIMEOUT_MS);
+            }
+        }
+    }
+
+    //ожидание прерывается остановкой обхода
+    private boolean acquireConnection() throws InterruptedException {
+        while (isRunning()) {
+            if (connections.tryAcquire(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-            boolean pageExists = pageRepository.existsByPathAndSite(relUrl, this.site);
+    private void releaseFetchSlot() {
+        connections.release();
+        synchronized (activeFetches) {
+            activeFetches.decrementAndGet();
+            activeFetches.notifyAll();
+        }
+    }
 
-            if(!pageExists && !hasErrorStatus(document)) {
-                pageRepository.save(newPage);
+    private Connection.Response fetch(String url) {
+        long start = System.currentTimeMillis();
+        try {
+            Connection connection = Jsoup.connect(url)
+                    .userAgent(crawlerConfig.getUserAgent())
+                    .referrer(crawlerConfig.getReferrer())
+                    .timeout(10000)
+                    .ignoreHttpErrors(true);
+            PageVersion known = knownPages.get(getRelativeUrl(url));
+            if (known != null && known.getEtag() != null) {
+                connection.header("If-None-Match", known.getEtag());
+            }
+            if (known != null && known.getLastModified() != null) {
+                connection.header("If-Modified-Since", known.getLastModified());
+            }
+            Connection.Response response = connection.execute();
+            int statusCode = response.statusCode();
+            rateLimiter.onResponse(host, statusCode, System.currentTimeMillis() - start, response.header("Retry-After"));
+            //перегруженный хост: страница повторяется один раз, когда лимитер даст токен
+            if ((statusCode == 429 || statusCode == 503) && isRunning() && retriedUrls.add(url)) {
+                pendingUrls.incrementAndGet();
+                frontier.add(url);
+            }
+            return response;
+        } catch (IOException e) {
+            //таймауты и обрывы соединения тоже замедляют обход хоста
+            rateLimiter.onResponse(host, 0, System.currentTimeMillis() - start, null);
+            throw new CompletionException(e);
+        }
+    }
 
-                initNewLemmaAndIndex(this.site, newPage, bodyText);
+    private void crawlPage(String url, Connection.Response response) {
+        try {
+            int statusCode = response.statusCode();
+            String relUrl = getRelativeUrl(url);
+            PageVersion known = knownPages.get(relUrl);
+
+            if (statusCode == 304) {
+                unchangedPages.incrementAndGet();
+            } else if (!hasErrorStatus(statusCode)) {
+                Document document = response.parse();
+                String content = document.outerHtml();
+                String bodyText = document.body().text();
+                String title = document.title();
+
+                if (known != null && PageText.hash(title, bodyText).equals(known.getContentHash())) {
+                    unchangedPages.incrementAndGet();
+                } else {
+                    PageText pageText = lemmaFinder.analyze(title, bodyText);
+                    indexingPipeline.submit(new ParsedPage(this.site, relUrl, statusCode, content, pageText,
+                            response.header("ETag"), response.header("Last-Modified"),
+                            known == null ? null : known.getPageId()));
+                }
 
                 findValidUrlsIn(document);
+            } else {
+                errorPages.incrementAndGet();
+                if (known != null && (statusCode == 404 || statusCode == 410)) {
+                    indexingPipeline.submit(ParsedPage.removed(this.site, relUrl, statusCode, known.getPageId()));
+                }
             }
+            crawledPages.incrementAndGet();
 
+            statusTimeWriter.touch(this.site.getId());
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
         }catch (Exception e){
             log.error("error", e);
         }
@@ -86,109 +243,35 @@ public class WebCrawler extends RecursiveAction {
 
         for (Element value :
                 elements) {
-            String entryUrl = value.attr("href");
+            String entryUrl = removeFragment(value.attr("href"));
 
             String entryAbsUrl = getAbsUrl(entryUrl);
             String entryRelUrl = getRelativeUrl(entryUrl);
 
-            if(!indexing){
+            if(!isRunning()){
                 break;
             }
 
             if (isUrlValid(entryAbsUrl, entryRelUrl)) {
-                addTask(entryAbsUrl);
+                addUrl(entryAbsUrl, entryRelUrl);
             }
         }
     }
 
-    private void addTask(String entryAbsUrl) {
-        WebCrawler task = new WebCrawler(entryAbsUrl);
-        task.fork();
-        task.join();
-        this.site.setDateTime(LocalDateTime.now());
-        siteRepository.save(this.site);
-    }
-
-    private void initNewLemmaAndIndex(Site site, Page newPage, String content) throws IOException {
-        Set<Index> indexSetToSave = new HashSet<>();
-        Set<Lemma> lemmaSetToSave = new TreeSet<>((o1, o2) -> o1.getLemma().compareToIgnoreCase(o2.getLemma()));
-        LemmaFinder lemmaFinder = new LemmaFinder();
-        Map<String, Integer> lemmaList = lemmaFinder.getLemmasAndFrequency(content);
-        for (Map.Entry<String, Integer> value :
-                lemmaList.entrySet()) {
-            String lemmaWord = value.getKey();
-            int rank = value.getValue();
-
-            Lemma newLemma = new Lemma();
-            newLemma.setSite(site);
-            newLemma.setLemma(lemmaWord);
-            newLemma.setFrequency(1);
-
-            Index newIndex = new Index();
-            newIndex.setPage(newPage);
-            newIndex.setLemma(newLemma);
-            newIndex.setRank(rank);
-
-            List<Lemma> foundLemmaList = lemmaRepository.findByLemmaAndSite(lemmaWord, site);
-
-            if(foundLemmaList.isEmpty() && !lemmaSetToSave.contains(newLemma)){
-                lemmaSetToSave.add(newLemma);
-                indexSetToSave.add(newIndex);
-            }else if(!foundLemmaList.isEmpty()){
-                updateExistingLemmas(foundLemmaList, newIndex, lemmaSetToSave, indexSetToSave);
-            }else if(lemmaSetToSave.contains(newLemma)){
-                updateFrequency(newLemma, newIndex, lemmaSetToSave);
-            }
-        }
-        synchronized (lemmaRepository) {
-            lemmaRepository.saveAll(lemmaSetToSave);
-            indexRepository.saveAll(indexSetToSave);
+    private void addUrl(String absUrl, String relUrl) {
+        if (visitedPaths.add(relUrl)) {
+            pendingUrls.incrementAndGet();
+            frontier.add(absUrl);
         }
     }
 
-    private void updateExistingLemmas(List<Lemma> foundLemmaList, Index newIndex, Set<Lemma> lemmaListToSave, Set<Index> indexListToSave) {
-        for (Lemma foundLemma : foundLemmaList) {
-            foundLemma.setFrequency(foundLemma.getFrequency() + 1);
-
-            newIndex.setLemma(foundLemma);
-
-            if(lemmaListToSave.contains(foundLemma)) {
-                updateFrequency(foundLemma, newIndex, lemmaListToSave);
-            }
-
-            lemmaListToSave.add(foundLemma);
-            indexListToSave.add(newIndex);
-        }
-    }
-
-    private void updateFrequency(Lemma lemma, Index newIndex, Set<Lemma> lemmaListToSave) {
-        Lemma lemmaFromList = lemmaListToSave.stream().filter(l -> l.equals(lemma)).findAny().get();
-        int frequencyFromList = lemmaFromList.getFrequency();
-        lemmaFromList.setFrequency(lemma.getFrequency() + frequencyFromList);
-        lemmaFromList.setId(lemma.getId());
-        newIndex.setLemma(lemmaFromList);
-        if(lemmaFromList.getId() == 0){
-            lemmaListToSave.add(lemma);
-        }
-    }
-
-    private boolean hasErrorStatus(Document document) {
-        int statusCode = document.connection().response().statusCode();
+    private boolean hasErrorStatus(int statusCode) {
         boolean hasClientError = String.valueOf(statusCode).charAt(0) == '4';
         boolean hasServerError = String.valueOf(statusCode).charAt(0) == '5';
 
         return hasClientError || hasServerError;
     }
 
-    private Page initNewPage(int statusCode, Site site, String content, String relUrl) {
-        Page newPage = new Page();
-        newPage.setCode(statusCode);
-        newPage.setSite(site);
-        newPage.setContent(content);
-        newPage.setPath(relUrl);
-        return newPage;
-    }
-
     public String getRelativeUrl(String url) {
         if (!url.startsWith("/")) {
             String domainName = getFullDomainName(url);
@@ -201,14 +284,20 @@ public class WebCrawler extends RecursiveAction {
 
     private String getAbsUrl(String url) {
         if(url.startsWith("/")) {
-            return getFullDomainName(this.url) + url.substring(1);
+            return this.site.getUrl() + url.substring(1);
         }
         return url;
     }
 
-    //получить из https://lenta.ru/news/2023/08/07/uuuar/ полное доменное имя https://lenta.ru/
+    private String removeFragment(String url) {
+        int fragmentStart = url.indexOf('#');
+        return fragmentStart < 0 ? url : url.substring(0, fragmentStart);
+    }
+
+    //получить из https://lenta.ru/news/2023/08/07/uuuar/ полное доменное имя https://lenta.ru/,
+    //из http://127.0.0.1:8081/page/1/ - http://127.0.0.1:8081/
     public String getFullDomainName(String url) {
-        Pattern fullDomainName = Pattern.compile("https://(www\\.)?\\w+\\.[a-z]+/");
+        Pattern fullDomainName = Pattern.compile("^https?://[^/]+/");
         Matcher matcher = fullDomainName.matcher(url);
 
         return matcher.find() ? matcher.group() : url;
@@ -227,15 +316,7 @@ public class WebCrawler extends RecursiveAction {
                 && absUrl.startsWith(this.site.getUrl())
                 && !absUrl.equals("")
                 && relUrl.startsWith("/")
-                && !pageRepository.existsByPathAndSite(relUrl, this.site);
-    }
-
-    public static void setUserAgent(String userAgent) {
-        WebCrawler.userAgent = userAgent;
-    }
-
-    public static void setReferrer(String referrer) {
-        WebCrawler.referrer = referrer;
+                && !visitedPaths.contains(relUrl);
     }
 
     public static boolean isIndexing() {
@@ -0,0 +1,84 @@
+package searchengine.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+//ограниченный LRU-кэш словоформа -> нормальная форма. Разбит на сегменты
+//со своей блокировкой, чтобы потоки краулера не ждали друг друга
+public class WordFormCache {
+    //нормальная форма для служебных частей речи и неизвестных слов
+    public static final String NO_LEMMA = "";
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public WordFormCache(int maxSize) {
+        int segmentSize = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    //lemmatizer вызывается вне блокировки, поэтому одно слово изредка
+    //может быть разобрано дважды - результат от этого не меняется
+    public String get(String word, Function<String, String> lemmatizer) {
+        Segment segment = segments[(word.hashCode() & 0x7fffffff) % SEGMENTS];
+        String lemma;
+        synchronized (segment) {
+            lemma = segment.get(word);
+        }
+        if (lemma != null) {
+            hits.increment();
+            return lemma;
+        }
+        misses.increment();
+        lemma = lemmatizer.apply(word);
+        synchronized (segment) {
+            segment.put(word, lemma);
+        }
+        return lemma;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private static class Segment extends LinkedHashMap<String, String> {
+        private final int maxSize;
+
+        private Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
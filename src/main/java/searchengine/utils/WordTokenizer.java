@@ -0,0 +1,73 @@
+package searchengine.utils;
+
+//разбивает текст на слова за один проход без регулярных выражений.
+//Словом считается непрерывная последовательность русских или латинских букв,
+//всё остальное - разделители; html-теги <...> пропускаются целиком.
+//Буквы приводятся к нижнему регистру, ё заменяется на е. Слова, в которых
+//смешаны кириллица и латиница, отбрасываются
+public final class WordTokenizer {
+    private static final int MAX_WORD_LENGTH = 64;
+
+    public interface WordConsumer {
+        //buffer переиспользуется между вызовами - копировать нужно только length символов;
+        //start - позиция слова в исходном тексте, слово занимает [start, start + length)
+        void accept(char[] buffer, int length, int start, boolean russian);
+    }
+
+    private WordTokenizer() {
+    }
+
+    public static void tokenize(String text, WordConsumer consumer) {
+        char[] buffer = new char[MAX_WORD_LENGTH];
+        int length = 0;
+        int start = 0;
+        int russianLetters = 0;
+        int englishLetters = 0;
+        int textLength = text.length();
+
+        for (int i = 0; i <= textLength; i++) {
+            char c = i < textLength ? text.charAt(i) : ' ';
+            char letter = 0;
+            if (c >= 'а' && c <= 'я') {
+                letter = c;
+            } else if (c >= 'А' && c <= 'Я') {
+                letter = (char) (c + ('а' - 'А'));
+            } else if (c == 'ё' || c == 'Ё') {
+                letter = 'е';
+            } else if (c >= 'a' && c <= 'z') {
+                letter = c;
+            } else if (c >= 'A' && c <= 'Z') {
+                letter = (char) (c + ('a' - 'A'));
+            } else if (c == '<') {
+                int tagEnd = text.indexOf('>', i + 1);
+                if (tagEnd > 0) {
+                    i = tagEnd;
+                }
+            }
+
+            if (letter != 0) {
+                if (length == 0) {
+                    start = i;
+                }
+                if (length < MAX_WORD_LENGTH) {
+                    buffer[length] = letter;
+                }
+                length++;
+                if (letter >= 'a' && letter <= 'z') {
+                    englishLetters++;
+                } else {
+                    russianLetters++;
+                }
+                continue;
+            }
+
+            //слишком длинные слова - не слова естественного языка, их пропускаем
+            if (length > 0 && length <= MAX_WORD_LENGTH && (russianLetters == 0 || englishLetters == 0)) {
+                consumer.accept(buffer, length, start, russianLetters > 0);
+            }
+            length = 0;
+            russianLetters = 0;
+            englishLetters = 0;
+        }
+    }
+}
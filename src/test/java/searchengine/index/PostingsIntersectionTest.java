@@ -0,0 +1,117 @@
+package searchengine.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//пересечение через Cursor.advance сравнивается с пересечением множеств
+class PostingsIntersectionTest {
+
+    @Test
+    void noListsGiveNoMatches() {
+        assertEquals(List.of(), intersect(List.of()));
+    }
+
+    @Test
+    void emptyListGivesNoMatches() {
+        Postings postings = postings(new int[]{1, 2, 3});
+
+        assertEquals(List.of(), intersect(List.of(postings, Postings.EMPTY)));
+        assertEquals(List.of(), intersect(List.of(Postings.EMPTY)));
+    }
+
+    @Test
+    void singleListReturnsAllEntries() {
+        Postings postings = Postings.encode(new int[]{2, 4, 8}, new int[]{5, 6, 7}, 3);
+
+        assertEquals(List.of("2:[5]", "4:[6]", "8:[7]"), intersect(List.of(postings)));
+    }
+
+    @Test
+    void disjointListsGiveNoMatches() {
+        assertEquals(List.of(), intersect(List.of(postings(new int[]{1, 3, 5}), postings(new int[]{2, 4, 6}))));
+    }
+
+    //ranks приходят в порядке списков на входе, а не в порядке обхода от короткого к длинному
+    @Test
+    void ranksFollowInputOrder() {
+        Postings longer = Postings.encode(new int[]{1, 2, 3, 4}, new int[]{10, 20, 30, 40}, 4);
+        Postings shorter = Postings.encode(new int[]{3}, new int[]{7}, 1);
+
+        assertEquals(List.of("3:[30, 7]"), intersect(List.of(longer, shorter)));
+        assertEquals(List.of("3:[7, 30]"), intersect(List.of(shorter, longer)));
+    }
+
+    @Test
+    void matchesNaiveIntersection() {
+        Random random = new Random(3);
+        int[] sizes = {1, 5, 63, 64, 65, 128, 300, 640, 2000};
+        for (int attempt = 0; attempt < 300; attempt++) {
+            int count = 1 + random.nextInt(4);
+            int universe = 50 + random.nextInt(5000);
+            List<Map<Integer, Integer>> lists = new ArrayList<>();
+            List<Postings> postings = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                int size = Math.min(universe, sizes[random.nextInt(sizes.length)]);
+                TreeMap<Integer, Integer> entries = new TreeMap<>();
+                while (entries.size() < size) {
+                    entries.put(1 + random.nextInt(universe), 1 + random.nextInt(50));
+                }
+                lists.add(entries);
+                postings.add(encode(entries));
+            }
+
+            assertEquals(naiveIntersect(lists), intersect(postings), "attempt " + attempt);
+        }
+    }
+
+    private static List<String> intersect(List<Postings> postings) {
+        List<String> result = new ArrayList<>();
+        PostingsIntersection.intersect(postings, (pageId, ranks) -> result.add(pageId + ":" + java.util.Arrays.toString(ranks)));
+        return result;
+    }
+
+    private static List<String> naiveIntersect(List<Map<Integer, Integer>> lists) {
+        List<String> result = new ArrayList<>();
+        for (Integer pageId : new TreeMap<>(lists.get(0)).keySet()) {
+            int[] ranks = new int[lists.size()];
+            boolean inAll = true;
+            for (int i = 0; i < lists.size() && inAll; i++) {
+                Integer rank = lists.get(i).get(pageId);
+                inAll = rank != null;
+                ranks[i] = inAll ? rank : 0;
+            }
+            if (inAll) {
+                result.add(pageId + ":" + java.util.Arrays.toString(ranks));
+            }
+        }
+        return result;
+    }
+
+    private static Postings postings(int[] pageIds) {
+        Map<Integer, Integer> entries = new HashMap<>();
+        for (int pageId : pageIds) {
+            entries.put(pageId, 1);
+        }
+        return encode(new TreeMap<>(entries));
+    }
+
+    private static Postings encode(TreeMap<Integer, Integer> entries) {
+        int[] pageIds = new int[entries.size()];
+        int[] ranks = new int[entries.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> entry : entries.entrySet()) {
+            pageIds[i] = entry.getKey();
+            ranks[i] = entry.getValue();
+            i++;
+        }
+        return Postings.encode(pageIds, ranks, pageIds.length);
+    }
+}
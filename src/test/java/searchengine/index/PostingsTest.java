@@ -0,0 +1,150 @@
+package searchengine.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//кодирование списков вхождений и переходы Cursor.advance сравниваются с массивами,
+//из которых список построен. Размеры выбраны вокруг границ блоков пропуска (64 записи)
+class PostingsTest {
+    private static final int[] SIZES = {1, 2, 63, 64, 65, 128, 129, 640, 1000};
+
+    @Test
+    void emptyList() {
+        Postings postings = Postings.encode(new int[0], new int[0], 0);
+
+        assertTrue(postings.isEmpty());
+        assertEquals(0, postings.size());
+        assertEquals(0, postings.maxRank());
+        assertFalse(postings.cursor().next());
+        assertFalse(postings.cursor().advance(0));
+        assertFalse(postings.cursor().advance(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void cursorReturnsEncodedEntries() {
+        Random random = new Random(1);
+        for (int size : SIZES) {
+            int[] pageIds = randomPageIds(random, size);
+            int[] ranks = randomRanks(random, size);
+            Postings postings = Postings.encode(pageIds, ranks, size);
+
+            assertEquals(size, postings.size());
+            assertEquals(java.util.Arrays.stream(ranks).max().getAsInt(), postings.maxRank());
+            Postings.Cursor cursor = postings.cursor();
+            for (int i = 0; i < size; i++) {
+                assertTrue(cursor.next(), "size " + size + ", entry " + i);
+                assertEquals(pageIds[i], cursor.pageId());
+                assertEquals(ranks[i], cursor.rank());
+            }
+            assertFalse(cursor.next());
+            assertFalse(cursor.advance(0));
+        }
+    }
+
+    //только первые size записей массивов попадают в список
+    @Test
+    void encodesPrefixOfArrays() {
+        Postings postings = Postings.encode(new int[]{3, 7, 9, 0}, new int[]{1, 2, 3, 0}, 3);
+
+        Postings.Cursor cursor = postings.cursor();
+        assertTrue(cursor.advance(8));
+        assertEquals(9, cursor.pageId());
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    void advanceFindsFirstPageNotLessThanTarget() {
+        Random random = new Random(2);
+        for (int size : SIZES) {
+            int[] pageIds = randomPageIds(random, size);
+            int[] ranks = randomRanks(random, size);
+            Postings postings = Postings.encode(pageIds, ranks, size);
+
+            for (int attempt = 0; attempt < 50; attempt++) {
+                Postings.Cursor cursor = postings.cursor();
+                int expected = 0;
+                int target = 0;
+                while (true) {
+                    //то точное значение одного из id, то произвольное число между ними
+                    target = random.nextBoolean() && expected < size
+                            ? Math.max(target, pageIds[expected + random.nextInt(size - expected)])
+                            : target + random.nextInt(pageIds[size - 1] / 10 + 2);
+                    while (expected < size && pageIds[expected] < target) {
+                        expected++;
+                    }
+                    boolean found = cursor.advance(target);
+                    if (expected == size) {
+                        assertFalse(found, "size " + size + ", target " + target);
+                        assertFalse(cursor.next());
+                        break;
+                    }
+                    assertTrue(found, "size " + size + ", target " + target);
+                    assertEquals(pageIds[expected], cursor.pageId());
+                    assertEquals(ranks[expected], cursor.rank());
+                }
+            }
+        }
+    }
+
+    @Test
+    void advanceDoesNotMoveWhenAlreadyAtTarget() {
+        Postings postings = Postings.encode(new int[]{5, 10, 15}, new int[]{1, 2, 3}, 3);
+        Postings.Cursor cursor = postings.cursor();
+
+        assertTrue(cursor.advance(10));
+        assertTrue(cursor.advance(7));
+        assertEquals(10, cursor.pageId());
+        assertTrue(cursor.next());
+        assertEquals(15, cursor.pageId());
+    }
+
+    //переходы с начала списка через несколько блоков проверяют и двоичный поиск по указателям пропуска
+    @Test
+    void advanceToLastPageOfEachBlock() {
+        int blocks = 20;
+        int size = 64 * blocks;
+        int[] pageIds = new int[size];
+        int[] ranks = new int[size];
+        for (int i = 0; i < size; i++) {
+            pageIds[i] = (i + 1) * 2;
+            ranks[i] = i + 1;
+        }
+        Postings postings = Postings.encode(pageIds, ranks, size);
+
+        for (int block = 0; block < blocks; block++) {
+            int last = block * 64 + 63;
+            Postings.Cursor cursor = postings.cursor();
+            assertTrue(cursor.advance(pageIds[last]));
+            assertEquals(pageIds[last], cursor.pageId());
+            assertEquals(ranks[last], cursor.rank());
+            //между последней записью блока и первой записью следующего
+            boolean hasNext = last + 1 < size;
+            assertEquals(hasNext, cursor.advance(pageIds[last] + 1));
+            if (hasNext) {
+                assertEquals(pageIds[last + 1], cursor.pageId());
+            }
+        }
+    }
+
+    //возрастающие id с разбросом шагов, чтобы встречались varint разной длины
+    static int[] randomPageIds(Random random, int size) {
+        TreeSet<Integer> ids = new TreeSet<>();
+        int bound = random.nextBoolean() ? size * 3 : 5_000_000;
+        while (ids.size() < size) {
+            ids.add(1 + random.nextInt(bound));
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    static int[] randomRanks(Random random, int size) {
+        int[] ranks = new int[size];
+        for (int i = 0; i < size; i++) {
+            ranks[i] = 1 + random.nextInt(random.nextInt(10) == 0 ? 100_000 : 20);
+        }
+        return ranks;
+    }
+}
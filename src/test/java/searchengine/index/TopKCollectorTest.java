@@ -0,0 +1,92 @@
+package searchengine.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//куча k лучших сравнивается с полной сортировкой всех совпадений
+class TopKCollectorTest {
+
+    @Test
+    void noHits() {
+        TopKCollector collector = new TopKCollector(10);
+
+        assertEquals(List.of(), collector.getTop());
+        assertEquals(0, collector.getTotalHits());
+        assertFalse(collector.isFull());
+        assertEquals(Double.NEGATIVE_INFINITY, collector.getThreshold());
+    }
+
+    @Test
+    void kGreaterThanHitsReturnsAllSorted() {
+        TopKCollector collector = new TopKCollector(10);
+        collector.offer(3, 1.5);
+        collector.offer(1, 4.0);
+        collector.offer(2, 1.5);
+
+        assertEquals(List.of("1:4.0", "2:1.5", "3:1.5"), toStrings(collector.getTop()));
+        assertEquals(3, collector.getTotalHits());
+        assertFalse(collector.isFull());
+    }
+
+    @Test
+    void zeroKOnlyCountsHits() {
+        TopKCollector collector = new TopKCollector(0);
+        collector.offer(1, 1.0);
+        collector.count();
+
+        assertEquals(List.of(), collector.getTop());
+        assertEquals(2, collector.getTotalHits());
+        assertTrue(collector.isFull());
+        assertEquals(Double.POSITIVE_INFINITY, collector.getThreshold());
+    }
+
+    @Test
+    void countedHitsAreNotRanked() {
+        TopKCollector collector = new TopKCollector(2);
+        collector.offer(1, 1.0);
+        collector.count();
+        collector.offer(2, 2.0);
+
+        assertEquals(List.of("2:2.0", "1:1.0"), toStrings(collector.getTop()));
+        assertEquals(3, collector.getTotalHits());
+        assertEquals(1.0, collector.getThreshold());
+    }
+
+    //много равных score: при равенстве выигрывает меньший pageId
+    @Test
+    void matchesFullSort() {
+        Random random = new Random(4);
+        int[] ks = {1, 2, 10, 64, 100, 1000};
+        for (int attempt = 0; attempt < 300; attempt++) {
+            int k = ks[random.nextInt(ks.length)];
+            int hits = random.nextInt(500);
+            TopKCollector collector = new TopKCollector(k);
+            List<TopKCollector.ScoredPage> all = new ArrayList<>();
+            for (int pageId : PostingsTest.randomPageIds(random, hits)) {
+                double score = random.nextInt(random.nextBoolean() ? 5 : 1000) / 4.0;
+                collector.offer(pageId, score);
+                all.add(new TopKCollector.ScoredPage(pageId, score));
+            }
+            all.sort(Comparator.comparingDouble(TopKCollector.ScoredPage::getScore).reversed()
+                    .thenComparingInt(TopKCollector.ScoredPage::getPageId));
+            List<TopKCollector.ScoredPage> expected = all.subList(0, Math.min(k, all.size()));
+
+            assertEquals(toStrings(expected), toStrings(collector.getTop()), "attempt " + attempt);
+            assertEquals(hits, collector.getTotalHits());
+            assertEquals(hits >= k, collector.isFull());
+            if (hits >= k) {
+                assertEquals(expected.get(k - 1).getScore(), collector.getThreshold());
+            }
+        }
+    }
+
+    private static List<String> toStrings(List<TopKCollector.ScoredPage> pages) {
+        return pages.stream().map(page -> page.getPageId() + ":" + page.getScore()).toList();
+    }
+}